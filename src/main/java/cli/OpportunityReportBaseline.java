@@ -0,0 +1,139 @@
+package cli;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Lines of a previous report grouped by method, with the hash of every method,
+ * so that an incremental run can copy the lines of the methods that did not change.
+ */
+class OpportunityReportBaseline {
+    private final Map<String, List<String>> linesByMethod = new LinkedHashMap<>();
+    private final Map<String, String> hashByMethod = new HashMap<>();
+    private final Map<String, String> fileByMethod = new HashMap<>();
+
+    static OpportunityReportBaseline read(File report, boolean csv) throws IOException {
+        OpportunityReportBaseline baseline = new OpportunityReportBaseline();
+        Map<String, String> canonicalPaths = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(report.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            boolean header = csv;
+            while ((line = reader.readLine()) != null) {
+                if (header || line.isEmpty()) {
+                    header = false;
+                    continue;
+                }
+                Map<String, String> values = csv ? parseCsv(line) : parseJson(line);
+                String file = values.get("file");
+                if (file != null)
+                    file = canonicalPaths.computeIfAbsent(file, OpportunityReportStarter::getCanonicalPath);
+                String method = values.get("method");
+                String hash = values.get("hash");
+                if (file == null || method == null || hash == null || hash.isEmpty())
+                    throw new IOException("Not a line of a report with hashes: " + line);
+                String key = getKey(file, method);
+                baseline.linesByMethod.computeIfAbsent(key, k -> new ArrayList<>()).add(line);
+                baseline.hashByMethod.put(key, hash);
+                baseline.fileByMethod.put(key, file);
+            }
+        }
+        return baseline;
+    }
+
+    private static String getKey(String file, String method) {
+        return file + '\n' + method;
+    }
+
+    //the lines of the method if its hash did not change, otherwise null
+    List<String> getLines(String file, String method, String hash) {
+        String key = getKey(file, method);
+        return hash.equals(hashByMethod.get(key)) ? linesByMethod.get(key) : null;
+    }
+
+    List<String> getLinesOutside(Set<String> files) {
+        List<String> lines = new ArrayList<>();
+        for (Map.Entry<String, List<String>> method : linesByMethod.entrySet()) {
+            if (!files.contains(fileByMethod.get(method.getKey())))
+                lines.addAll(method.getValue());
+        }
+        return lines;
+    }
+
+    private static Map<String, String> parseCsv(String line) {
+        Map<String, String> values = new HashMap<>();
+        int column = 0;
+        StringBuilder value = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    value.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    value.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                putColumn(values, column++, value.toString());
+                value.setLength(0);
+            } else {
+                value.append(c);
+            }
+        }
+        putColumn(values, column, value.toString());
+        return values;
+    }
+
+    private static void putColumn(Map<String, String> values, int column, String value) {
+        if (column < OpportunityReportStarter.COLUMNS.length)
+            values.put(OpportunityReportStarter.COLUMNS[column], value);
+    }
+
+    //only the string members are read, which is all the baseline needs
+    private static Map<String, String> parseJson(String line) {
+        Map<String, String> values = new HashMap<>();
+        int i = 0;
+        while ((i = line.indexOf('"', i)) >= 0) {
+            StringBuilder name = new StringBuilder();
+            i = readString(line, i, name);
+            if (i >= line.length() || line.charAt(i) != ':')
+                break;
+            i++;
+            if (i < line.length() && line.charAt(i) == '"') {
+                StringBuilder value = new StringBuilder();
+                i = readString(line, i, value);
+                values.put(name.toString(), value.toString());
+            }
+        }
+        return values;
+    }
+
+    //reads the string starting with the quote at the index, and returns the index after its closing quote
+    private static int readString(String line, int i, StringBuilder value) {
+        for (i++; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"')
+                return i + 1;
+            if (c == '\\' && i + 1 < line.length()) {
+                char escaped = line.charAt(++i);
+                if (escaped == 'u' && i + 4 < line.length()) {
+                    value.append((char) Integer.parseInt(line.substring(i + 1, i + 5), 16));
+                    i += 4;
+                } else {
+                    value.append(escaped);
+                }
+            } else {
+                value.append(c);
+            }
+        }
+        return i;
+    }
+}
@@ -0,0 +1,105 @@
+package cli;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a report together with an append-only log of the methods it already holds, so that an interrupted run
+ * can resume. Each line of the log is the length of the report after a method, and the identity of the method.
+ * The log is deleted when the report is complete.
+ */
+class OpportunityReportCheckpoint implements Closeable {
+    private static final long SYNC_INTERVAL = TimeUnit.SECONDS.toMillis(10);
+    private final File logFile;
+    private final FileOutputStream report;
+    private final OutputStream reportStream;
+    private final FileOutputStream log;
+    private final OutputStream logStream;
+    private final Set<String> completedMethods = new HashSet<>();
+    private long reportLength;
+    private boolean resumed;
+    private long lastSync = System.currentTimeMillis();
+
+    OpportunityReportCheckpoint(File reportFile) throws IOException {
+        logFile = new File(reportFile.getPath() + ".checkpoint");
+        long logLength = 0;
+        if (logFile.exists() && reportFile.exists()) {
+            byte[] content = Files.readAllBytes(logFile.toPath());
+            String[] lines = new String(content, StandardCharsets.UTF_8).split("\n", -1);
+            //the last element follows the last line break, so it is empty or a line cut by the interruption
+            for (int i = 0; i < lines.length - 1; i++) {
+                String[] fields = lines[i].split("\t", 2);
+                long length = Long.parseLong(fields[0]);
+                //without a sync, the log may have reached the disk before the report
+                if (length > reportFile.length())
+                    break;
+                reportLength = length;
+                logLength += lines[i].getBytes(StandardCharsets.UTF_8).length + 1;
+                resumed = true;
+                if (fields.length > 1)
+                    completedMethods.add(fields[1]);
+            }
+        }
+        report = new FileOutputStream(reportFile, resumed);
+        report.getChannel().truncate(reportLength);
+        reportStream = new BufferedOutputStream(report);
+        log = new FileOutputStream(logFile, resumed);
+        log.getChannel().truncate(logLength);
+        logStream = new BufferedOutputStream(log);
+    }
+
+    //whether the report already holds lines, which then are not written again
+    boolean isResumed() {
+        return resumed;
+    }
+
+    boolean isCompleted(String[] identity) {
+        return completedMethods.contains(getKey(identity));
+    }
+
+    /**
+     * @param lines    lines to append to the report
+     * @param identity file, signature and hash of the method the lines belong to, or null for other lines
+     */
+    synchronized void write(List<String> lines, String[] identity) throws IOException {
+        for (String line : lines) {
+            byte[] bytes = (line + '\n').getBytes(StandardCharsets.UTF_8);
+            reportStream.write(bytes);
+            reportLength += bytes.length;
+        }
+        reportStream.flush();
+        String logLine = identity != null ? reportLength + "\t" + getKey(identity) : String.valueOf(reportLength);
+        logStream.write((logLine + '\n').getBytes(StandardCharsets.UTF_8));
+        logStream.flush();
+        if (System.currentTimeMillis() - lastSync > SYNC_INTERVAL)
+            sync();
+    }
+
+    //the report is synced first, so that the log never refers to lines lost by a crash of the system
+    private void sync() throws IOException {
+        report.getFD().sync();
+        log.getFD().sync();
+        lastSync = System.currentTimeMillis();
+    }
+
+    private static String getKey(String[] identity) {
+        return String.join("\t", identity).replace('\n', ' ');
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        sync();
+        reportStream.close();
+        logStream.close();
+    }
+
+    //called after a complete run, so that the next one starts over
+    void delete() throws IOException {
+        Files.deleteIfExists(logFile.toPath());
+    }
+}
@@ -0,0 +1,343 @@
+package cli;
+
+import com.intellij.ide.impl.ProjectUtil;
+import com.intellij.ide.highlighter.JavaFileType;
+import com.intellij.openapi.application.ApplicationStarter;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.*;
+import com.intellij.psi.search.FileTypeIndex;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+import core.ast.PartialMethodExtractor;
+import core.ast.decomposition.cfg.ASTSlice;
+import org.jetbrains.annotations.NotNull;
+import utils.PsiUtils;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless entry point writing the opportunities of every method of a project to a report, e.g. nightly in CI:
+ * <pre>idea.sh extract-method-report &lt;project&gt; &lt;report&gt; [--format=ndjson|csv] [--min-statements=N]
+ * [--max-statements=N] [--limit=N] [--threads=N] [--max-memory=MB] [--baseline=&lt;report&gt;]
+ * [--changed-files=&lt;list&gt;]</pre>
+ * Each line of the report is one opportunity, written as soon as its method is analyzed.
+ * With a baseline, the lines of the methods whose text did not change are copied from it instead.
+ * An interrupted run started again with the same report skips the methods the report already holds.
+ */
+public class OpportunityReportStarter implements ApplicationStarter {
+    private static final Logger LOG = Logger.getInstance(OpportunityReportStarter.class);
+    static final String[] COLUMNS = {"file", "method", "hash", "variable", "extractedStatements",
+            "duplicatedStatements", "duplicationRatio", "parameters", "methodStatements", "approximate"};
+
+    @Override
+    public String getCommandName() {
+        return "extract-method-report";
+    }
+
+    @Override
+    public void premain(String[] args) {
+    }
+
+    @Override
+    public void main(String[] args) {
+        int exitCode;
+        try {
+            exitCode = run(args);
+        } catch (Throwable e) {
+            LOG.error(e);
+            exitCode = 1;
+        }
+        System.exit(exitCode);
+    }
+
+    private static int run(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        List<String> paths = new ArrayList<>();
+        //the first argument is the command name
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].startsWith("--") && args[i].contains("=")) {
+                int separator = args[i].indexOf('=');
+                options.put(args[i].substring(2, separator), args[i].substring(separator + 1));
+            } else {
+                paths.add(args[i]);
+            }
+        }
+        if (paths.size() != 2) {
+            System.err.println("Usage: extract-method-report <project> <report> [--format=ndjson|csv] [--min-statements=N] "
+                    + "[--max-statements=N] [--limit=N] [--threads=N] [--max-memory=MB] [--baseline=<report>] "
+                    + "[--changed-files=<list>]");
+            return 2;
+        }
+        boolean csv = "csv".equals(options.getOrDefault("format", "ndjson"));
+        int minimumStatements = Integer.parseInt(options.getOrDefault("min-statements", "0"));
+        int maximumStatements = Integer.parseInt(options.getOrDefault("max-statements", String.valueOf(Integer.MAX_VALUE)));
+        int limit = Integer.parseInt(options.getOrDefault("limit", "10"));
+        int threads = Integer.parseInt(options.getOrDefault("threads",
+                String.valueOf(Runtime.getRuntime().availableProcessors())));
+        long maximumMemory = Long.parseLong(options.getOrDefault("max-memory",
+                String.valueOf(Runtime.getRuntime().maxMemory() / 1024 / 1024 * 3 / 4))) * 1024 * 1024;
+
+        OpportunityReportBaseline baseline = options.containsKey("baseline")
+                ? OpportunityReportBaseline.read(new File(options.get("baseline")), csv) : null;
+        //without a list of changed files, every method is hashed and compared with the baseline
+        Set<String> changedFiles = options.containsKey("changed-files")
+                ? getChangedFiles(paths.get(0), new File(options.get("changed-files"))) : null;
+
+        Project project = ProjectUtil.openOrImport(paths.get(0), null, false);
+        if (project == null) {
+            System.err.println("Could not open " + paths.get(0));
+            return 1;
+        }
+        DumbService.getInstance(project).waitForSmartMode();
+        List<SmartPsiElementPointer<PsiMethod>> methods = ReadAction.compute(() ->
+                getMethods(project, minimumStatements, maximumStatements, changedFiles));
+
+        //a run interrupted by a restart or a crash resumes from the methods its report already holds
+        OpportunityReportCheckpoint checkpoint = new OpportunityReportCheckpoint(new File(paths.get(1)));
+        try {
+            if (!checkpoint.isResumed()) {
+                List<String> lines = new ArrayList<>();
+                if (csv)
+                    lines.add(String.join(",", COLUMNS));
+                //the lines of unchanged files are copied without loading their PSI, and the ones of deleted files dropped
+                if (baseline != null && changedFiles != null)
+                    lines.addAll(baseline.getLinesOutside(changedFiles));
+                checkpoint.write(lines, null);
+            }
+            //methods come largest first, and the pool takes them in that order,
+            //so that no giant method is started last and becomes the long tail
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            Semaphore permits = new Semaphore(threads);
+            AtomicInteger failures = new AtomicInteger();
+            boolean reduced = false;
+            for (SmartPsiElementPointer<PsiMethod> method : methods) {
+                permits.acquire();
+                //over the memory bound, the other permits are held back so that one method runs at a time,
+                //until the memory used falls below the bound again
+                boolean overMemory = getUsedMemory() > maximumMemory;
+                if (overMemory && !reduced) {
+                    permits.acquire(threads - 1);
+                    reduced = true;
+                } else if (!overMemory && reduced) {
+                    permits.release(threads - 1);
+                    reduced = false;
+                }
+                executor.execute(() -> {
+                    try {
+                        String[] identity = ReadAction.compute(() -> getIdentity(method.getElement()));
+                        if (identity == null || checkpoint.isCompleted(identity))
+                            return;
+                        List<String> lines = ReadAction.compute(() ->
+                                analyze(method.getElement(), identity, limit, csv, baseline));
+                        checkpoint.write(lines, identity);
+                    } catch (Exception e) {
+                        LOG.warn("Could not analyze " + method.getElement(), e);
+                        failures.incrementAndGet();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            //the checkpoint is kept, so that a run started again analyzes only the methods that failed
+            if (failures.get() > 0) {
+                System.err.println(failures.get() + " methods could not be analyzed, see idea.log");
+                return 1;
+            }
+        } finally {
+            checkpoint.close();
+        }
+        checkpoint.delete();
+        return 0;
+    }
+
+    private static Set<String> getChangedFiles(String projectPath, File list) throws IOException {
+        Set<String> changedFiles = new HashSet<>();
+        for (String line : Files.readAllLines(list.toPath(), StandardCharsets.UTF_8)) {
+            if (line.trim().isEmpty())
+                continue;
+            File file = new File(line.trim());
+            if (!file.isAbsolute())
+                file = new File(projectPath, line.trim());
+            changedFiles.add(getCanonicalPath(file.getPath()));
+        }
+        return changedFiles;
+    }
+
+    //paths of the list, of the project and of the baseline are compared in one form, whatever links or separators they use
+    static String getCanonicalPath(String path) {
+        File file = new File(path);
+        try {
+            return FileUtil.toSystemIndependentName(file.getCanonicalPath());
+        } catch (IOException e) {
+            return FileUtil.toSystemIndependentName(file.getAbsolutePath());
+        }
+    }
+
+    private static List<SmartPsiElementPointer<PsiMethod>> getMethods(Project project, int minimumStatements,
+                                                                       int maximumStatements, Set<String> files) {
+        List<SmartPsiElementPointer<PsiMethod>> methods = new ArrayList<>();
+        Map<SmartPsiElementPointer<PsiMethod>, Long> costs = new HashMap<>();
+        PsiManager psiManager = PsiManager.getInstance(project);
+        SmartPointerManager pointerManager = SmartPointerManager.getInstance(project);
+        for (VirtualFile file : FileTypeIndex.getFiles(JavaFileType.INSTANCE, GlobalSearchScope.projectScope(project))) {
+            if (files != null && !files.contains(getCanonicalPath(file.getPath())))
+                continue;
+            PsiFile psiFile = psiManager.findFile(file);
+            if (psiFile == null)
+                continue;
+            for (PsiMethod method : PsiTreeUtil.findChildrenOfType(psiFile, PsiMethod.class)) {
+                if (method.getBody() == null)
+                    continue;
+                Collection<PsiStatement> statements = PsiTreeUtil.findChildrenOfType(method.getBody(), PsiStatement.class);
+                if (statements.size() >= minimumStatements && statements.size() <= maximumStatements) {
+                    SmartPsiElementPointer<PsiMethod> pointer = pointerManager.createSmartPsiElementPointer(method);
+                    methods.add(pointer);
+                    costs.put(pointer, getEstimatedCost(method, statements));
+                }
+            }
+        }
+        methods.sort(Comparator.comparing(costs::get, Comparator.reverseOrder()));
+        return methods;
+    }
+
+    //the data dependences grow with statements times variables, and every level of loops adds fixpoint iterations
+    private static long getEstimatedCost(PsiMethod method, Collection<PsiStatement> statements) {
+        int variables = method.getParameterList().getParametersCount()
+                + PsiTreeUtil.findChildrenOfType(method.getBody(), PsiVariable.class).size();
+        int maximumDepth = 0;
+        for (PsiStatement statement : statements) {
+            int depth = 0;
+            for (PsiElement parent = statement.getParent(); parent != null && parent != method; parent = parent.getParent()) {
+                if (parent instanceof PsiLoopStatement || parent instanceof PsiIfStatement
+                        || parent instanceof PsiTryStatement || parent instanceof PsiSwitchStatement)
+                    depth++;
+            }
+            maximumDepth = Math.max(maximumDepth, depth);
+        }
+        return (long) statements.size() * (variables + 1) * (maximumDepth + 1);
+    }
+
+    //file, signature and hash of the text of the method along with the fields of its class,
+    //whose types and modifiers the analysis depends on as well
+    private static String[] getIdentity(PsiMethod method) {
+        if (method == null)
+            return null;
+        StringBuilder text = new StringBuilder(method.getText());
+        PsiClass containingClass = method.getContainingClass();
+        if (containingClass != null) {
+            for (PsiField field : containingClass.getFields()) {
+                text.append('\n').append(field.getText());
+            }
+        }
+        return new String[]{getCanonicalPath(method.getContainingFile().getVirtualFile().getPath()),
+                PsiUtils.calculateSignature(method), getHash(text.toString())};
+    }
+
+    private static List<String> analyze(PsiMethod method, String[] identity, int limit, boolean csv,
+                                        OpportunityReportBaseline baseline) {
+        List<String> lines = new ArrayList<>();
+        if (method == null)
+            return lines;
+        String file = identity[0];
+        String signature = identity[1];
+        String hash = identity[2];
+        List<String> unchangedLines = baseline != null ? baseline.getLines(file, signature, hash) : null;
+        if (unchangedLines != null)
+            return unchangedLines;
+        List<ASTSlice> slices = PartialMethodExtractor.getBestOpportunities(method, limit);
+        if (slices != null) {
+            for (ASTSlice slice : slices) {
+                int extractedStatements = slice.getNumberOfSliceStatements();
+                int duplicatedStatements = slice.getNumberOfDuplicatedStatements();
+                Object[] values = {file, signature, hash, slice.getExtractedMethodName(), extractedStatements,
+                        duplicatedStatements, extractedStatements > 0 ? (double) duplicatedStatements / extractedStatements : 0.0,
+                        slice.getPassedParameters().size(), slice.getMethodSize(), slice.isApproximate()};
+                lines.add(csv ? toCsv(values) : toJson(values));
+            }
+        }
+        //a method without opportunities still gets a line, so that the next incremental run knows its hash
+        if (lines.isEmpty()) {
+            Object[] values = new Object[COLUMNS.length];
+            values[0] = file;
+            values[1] = signature;
+            values[2] = hash;
+            lines.add(csv ? toCsv(values) : toJson(values));
+        }
+        return lines;
+    }
+
+    private static String getHash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toCsv(Object[] values) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            String value = values[i] != null ? String.valueOf(values[i]) : "";
+            if (value.contains(",") || value.contains("\"") || value.contains("\n"))
+                value = '"' + value.replace("\"", "\"\"") + '"';
+            sb.append(value);
+        }
+        return sb.toString();
+    }
+
+    private static String toJson(Object[] values) {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append('"').append(COLUMNS[i]).append("\":");
+            if (values[i] instanceof String)
+                appendJsonString(sb, (String) values[i]);
+            else
+                sb.append(values[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    private static void appendJsonString(StringBuilder sb, @NotNull String value) {
+        sb.append('"');
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format("\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        sb.append('"');
+    }
+
+    private static long getUsedMemory() {
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -3,16 +3,21 @@ package core.ast;
 import com.intellij.lang.jvm.JvmModifier;
 import com.intellij.psi.*;
 
-import core.ast.decomposition.MethodBodyObject;
-
 import java.util.*;
 
 public class ASTReader {
 
     private static SystemObject systemObject;
     private final String PARSING_INDICATOR_TEXT_KEY = "feature.envy.parsing.indicator";
+    private final boolean attributeComments;
 
     public ASTReader(List<PsiClass> classes) {
+        this(classes, true);
+    }
+
+    //without comment attribution, fields and methods get none of the comments of their classes
+    public ASTReader(List<PsiClass> classes, boolean attributeComments) {
+        this.attributeComments = attributeComments;
         systemObject = new SystemObject();
         for (PsiClass c : classes) {
             systemObject.addClass(processTypeDeclaration(c));
@@ -65,14 +70,11 @@ public class ASTReader {
 
     private void processFieldDeclaration(final ClassObject classObject, PsiField fieldDeclaration) {
         List<CommentObject> fieldDeclarationComments = new ArrayList<>();
-        int fieldDeclarationStartPosition = fieldDeclaration.getStartOffsetInParent();
-        int fieldDeclarationEndPosition = fieldDeclarationStartPosition + fieldDeclaration.getTextLength();
-        for (CommentObject comment : classObject.commentList) {
-            int commentStartPosition = comment.getStartPosition();
-            int commentEndPosition = commentStartPosition + comment.getLength();
-            if (fieldDeclarationStartPosition <= commentStartPosition && fieldDeclarationEndPosition >= commentEndPosition) {
-                fieldDeclarationComments.add(comment);
-            }
+        if (attributeComments) {
+            int fieldDeclarationStartPosition = fieldDeclaration.getStartOffsetInParent();
+            int fieldDeclarationEndPosition = fieldDeclarationStartPosition + fieldDeclaration.getTextLength();
+            fieldDeclarationComments = CommentObject.getCommentsWithin(classObject.commentList,
+                    fieldDeclarationStartPosition, fieldDeclarationEndPosition);
         }
 
         TypeObject typeObject = TypeObject.extractTypeObject(fieldDeclaration.getType().getCanonicalText());
@@ -97,86 +99,14 @@ public class ASTReader {
     }
 
     private void processMethodDeclaration(final ClassObject classObject, PsiMethod methodDeclaration) {
-        String methodName = methodDeclaration.getName();
-        final ConstructorObject constructorObject = new ConstructorObject();
-        constructorObject.setMethodDeclaration(methodDeclaration);
-        constructorObject.setName(methodName);
-        constructorObject.setClassName(classObject.getName());
-        int methodDeclarationStartPosition = methodDeclaration.getStartOffsetInParent();
-        int methodDeclarationEndPosition = methodDeclarationStartPosition + methodDeclaration.getTextLength();
-        for (CommentObject comment : classObject.commentList) {
-            int commentStartPosition = comment.getStartPosition();
-            int commentEndPosition = commentStartPosition + comment.getLength();
-            if (methodDeclarationStartPosition <= commentStartPosition && methodDeclarationEndPosition >= commentEndPosition) {
-                constructorObject.addComment(comment);
-            }
-        }
-
-        if (methodDeclaration.hasModifier(JvmModifier.PUBLIC))
-            constructorObject.setAccess(Access.PUBLIC);
-        else if (methodDeclaration.hasModifier(JvmModifier.PROTECTED))
-            constructorObject.setAccess(Access.PROTECTED);
-        else if (methodDeclaration.hasModifier(JvmModifier.PRIVATE))
-            constructorObject.setAccess(Access.PRIVATE);
-        else
-            constructorObject.setAccess(Access.NONE);
-
-        PsiParameter[] parameters = methodDeclaration.getParameterList().getParameters();
-        for (PsiParameter parameter : parameters) {
-            String parameterType = parameter.getType().getCanonicalText();
-            TypeObject typeObject = TypeObject.extractTypeObject(parameterType);
-            if (parameter.isVarArgs()) {
-                typeObject.setArrayDimension(1);
-            }
-            ParameterObject parameterObject = new ParameterObject(typeObject, parameter.getName(), parameter.isVarArgs());
-            parameterObject.setSingleVariableDeclaration(parameter);
-            constructorObject.addParameter(parameterObject);
-        }
-
-        PsiCodeBlock methodBody = methodDeclaration.getBody();
-        if (methodBody != null) {
-            MethodBodyObject methodBodyObject = new MethodBodyObject(methodBody);
-            constructorObject.setMethodBody(methodBodyObject);
-        }
+        AbstractMethodDeclaration methodDeclarationObject = MethodModelFactory.getInstance(methodDeclaration.getProject())
+                .getMethodDeclaration(methodDeclaration, classObject.getName(),
+                        attributeComments ? classObject.commentList : Collections.emptyList());
 
-        for (AnonymousClassDeclarationObject anonymous : constructorObject.getAnonymousClassDeclarations()) {
-            anonymous.setClassObject(classObject);
-            PsiAnonymousClass anonymousClassDeclaration = anonymous.getAnonymousClassDeclaration();
-            int anonymousClassDeclarationStartPosition = anonymousClassDeclaration.getStartOffsetInParent();
-            int anonymousClassDeclarationEndPosition = anonymousClassDeclarationStartPosition + anonymousClassDeclaration.getTextLength();
-            for (CommentObject comment : constructorObject.commentList) {
-                int commentStartPosition = comment.getStartPosition();
-                int commentEndPosition = commentStartPosition + comment.getLength();
-                if (anonymousClassDeclarationStartPosition <= commentStartPosition && anonymousClassDeclarationEndPosition >= commentEndPosition) {
-                    anonymous.addComment(comment);
-                }
-            }
-        }
-
-        if (methodDeclaration.isConstructor()) {
-            classObject.addConstructor(constructorObject);
+        if (methodDeclarationObject instanceof ConstructorObject) {
+            classObject.addConstructor((ConstructorObject) methodDeclarationObject);
         } else {
-            MethodObject methodObject = new MethodObject(methodDeclaration, constructorObject);
-            PsiAnnotation[] extendedModifiers = methodDeclaration.getAnnotations();
-            for (PsiAnnotation extendedModifier : extendedModifiers) {
-                if ("Test".equals(extendedModifier.getQualifiedName())) {
-                    methodObject.setTestAnnotation(true);
-                    break;
-                }
-            }
-            PsiType returnType = methodDeclaration.getReturnType();
-            String qualifiedName = returnType != null ? returnType.getCanonicalText() : null;
-            TypeObject typeObject = TypeObject.extractTypeObject(qualifiedName);
-            methodObject.setReturnType(typeObject);
-            if (methodDeclaration.hasModifier(JvmModifier.ABSTRACT))
-                methodObject.setAbstract(true);
-            if (methodDeclaration.hasModifier(JvmModifier.STATIC))
-                methodObject.setStatic(true);
-            if (methodDeclaration.hasModifier(JvmModifier.SYNCHRONIZED))
-                methodObject.setSynchronized(true);
-            if (methodDeclaration.hasModifier(JvmModifier.NATIVE))
-                methodObject.setNative(true);
-
+            MethodObject methodObject = (MethodObject) methodDeclarationObject;
             classObject.addMethod(methodObject);
             FieldInstructionObject fieldInstruction = methodObject.isGetter();
             if (fieldInstruction != null)
@@ -5,10 +5,11 @@ import java.util.List;
 import java.util.Set;
 
 import com.intellij.psi.PsiAnonymousClass;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.util.PsiTreeUtil;
 
 public class AnonymousClassDeclarationObject extends ClassDeclarationObject {
 	private ASTInformation anonymousClassDeclaration;
-	private ClassObject classObject;
 	
 	public void setAnonymousClassDeclaration(PsiAnonymousClass anonymous) {
 		this.anonymousClassDeclaration = ASTInformationGenerator.generateASTInformation(anonymous);
@@ -18,12 +19,14 @@ public class AnonymousClassDeclarationObject extends ClassDeclarationObject {
 		return (PsiAnonymousClass)anonymousClassDeclaration.recoverASTNode();
 	}
 
+	//looked up in the current system rather than kept, since the model of the method declaring the anonymous class
+	//is shared by every system and analysis reading that method
 	public ClassObject getClassObject() {
-		return classObject;
-	}
-
-	public void setClassObject(ClassObject classObject) {
-		this.classObject = classObject;
+		SystemObject systemObject = ASTReader.getSystemObject();
+		PsiMethod method = PsiTreeUtil.getParentOfType(getAnonymousClassDeclaration(), PsiMethod.class);
+		if (systemObject == null || method == null || method.getContainingClass() == null)
+			return null;
+		return systemObject.getClassObject(method.getContainingClass().getQualifiedName());
 	}
 	
 	public TypeObject getSuperclass() {
@@ -32,6 +35,7 @@ public class AnonymousClassDeclarationObject extends ClassDeclarationObject {
 
 	protected void accessedFieldFromThisClass(Set<FieldObject> fields, FieldInstructionObject fieldInstruction) {
 		List<FieldObject> allFields = new ArrayList<>(fieldList);
+		ClassObject classObject = getClassObject();
 		if(classObject != null) {
 			//add the fields of the class in which the anonymous class is declared
 			allFields.addAll(classObject.fieldList);
@@ -34,11 +34,13 @@ public abstract class ClassDeclarationObject {
     }
 
     public void addComment(CommentObject comment) {
-        commentList.add(comment);
+        CommentObject.addSorted(commentList, comment);
     }
 
     public boolean addComments(List<CommentObject> comments) {
-        return commentList.addAll(comments);
+        boolean changed = commentList.addAll(comments);
+        commentList.sort(CommentObject.START_POSITION_ORDER);
+        return changed;
     }
 
     public List<MethodObject> getMethodList() {
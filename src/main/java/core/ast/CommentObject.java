@@ -2,7 +2,13 @@ package core.ast;
 
 import com.intellij.psi.PsiComment;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
 class CommentObject {
+    static final Comparator<CommentObject> START_POSITION_ORDER = Comparator.comparingInt(CommentObject::getStartPosition);
+
     private ASTInformation comment;
     private final String text;
     private final CommentType type;
@@ -51,6 +57,41 @@ class CommentObject {
         return comment.getLength();
     }
 
+    //keeps the comments sorted by start position; comments usually come in order, and are then appended
+    static void addSorted(List<CommentObject> comments, CommentObject comment) {
+        int index = comments.size();
+        if (index > 0 && comments.get(index - 1).getStartPosition() > comment.getStartPosition())
+            index = getFirstIndexFrom(comments, comment.getStartPosition());
+        comments.add(index, comment);
+    }
+
+    //the comments lying between the positions, found by binary search in comments sorted by start position
+    static List<CommentObject> getCommentsWithin(List<CommentObject> sortedComments, int startPosition, int endPosition) {
+        List<CommentObject> comments = new ArrayList<>();
+        for (int i = getFirstIndexFrom(sortedComments, startPosition); i < sortedComments.size(); i++) {
+            CommentObject comment = sortedComments.get(i);
+            if (comment.getStartPosition() > endPosition)
+                break;
+            if (comment.getStartPosition() + comment.getLength() <= endPosition)
+                comments.add(comment);
+        }
+        return comments;
+    }
+
+    //index of the first comment starting at or after the position
+    private static int getFirstIndexFrom(List<CommentObject> sortedComments, int position) {
+        int low = 0;
+        int high = sortedComments.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sortedComments.get(middle).getStartPosition() < position)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
     public boolean equals(Object o) {
         if (this == o) {
             return true;
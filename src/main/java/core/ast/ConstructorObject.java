@@ -82,7 +82,7 @@ public class ConstructorObject implements AbstractMethodDeclaration {
     }
 
     public void addComment(CommentObject comment) {
-        commentList.add(comment);
+        CommentObject.addSorted(commentList, comment);
     }
 
     public ListIterator<CommentObject> getCommentListIterator() {
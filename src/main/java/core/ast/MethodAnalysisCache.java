@@ -0,0 +1,65 @@
+package core.ast;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiMethod;
+import core.ast.decomposition.cfg.PDG;
+import utils.AnalysisCache;
+
+//Keeps the PDGs precomputed by the speculative analysis for the most recently visited methods of a project, as long as
+//their files stay unmodified and they fit in the memory budget of the analysis caches. A cached PDG is shared by all
+//threads slicing its method, so it holds all its dependences before it is put and is never modified afterwards
+public class MethodAnalysisCache {
+    //rough sizes of a node with its statement model and variable sets, and of an edge
+    private static final long NODE_BYTES = 2048;
+    private static final long EDGE_BYTES = 96;
+    private final AnalysisCache<MethodKey, CachedAnalysis> cache = new AnalysisCache<>("pdg",
+            analysis -> analysis.pdg.getNodes().size() * NODE_BYTES + analysis.pdg.getEdges().size() * EDGE_BYTES);
+
+    static MethodAnalysisCache getInstance(Project project) {
+        return ServiceManager.getService(project, MethodAnalysisCache.class);
+    }
+
+    PDG get(PsiMethod method) {
+        MethodKey key = new MethodKey(method);
+        CachedAnalysis analysis = cache.get(key);
+        if (analysis == null)
+            return null;
+        if (isOutdated(analysis)) {
+            cache.remove(key);
+            return null;
+        }
+        return analysis.getMethod() == method ? analysis.pdg : null;
+    }
+
+    //the analyses of edited or deleted methods are dropped first, so that they do not keep their PSI trees
+    void put(PsiMethod method, PDG pdg) {
+        cache.removeIf(MethodAnalysisCache::isOutdated);
+        cache.put(new MethodKey(method), new CachedAnalysis(pdg, getModificationStamp(method)));
+    }
+
+    private static boolean isOutdated(CachedAnalysis analysis) {
+        PsiMethod method = analysis.getMethod();
+        return method == null || !method.isValid() || analysis.modificationStamp != getModificationStamp(method);
+    }
+
+    private static long getModificationStamp(PsiMethod method) {
+        PsiFile file = method.getContainingFile();
+        return file != null ? file.getModificationStamp() : -1;
+    }
+
+    private static class CachedAnalysis {
+        private final PDG pdg;
+        private final long modificationStamp;
+
+        private CachedAnalysis(PDG pdg, long modificationStamp) {
+            this.pdg = pdg;
+            this.modificationStamp = modificationStamp;
+        }
+
+        private PsiMethod getMethod() {
+            return pdg.getMethod().getMethodDeclaration();
+        }
+    }
+}
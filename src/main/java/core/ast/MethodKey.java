@@ -0,0 +1,37 @@
+package core.ast;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiMethod;
+import utils.PsiUtils;
+
+import java.util.Objects;
+
+//Identifies a method across reparses of its file by the file and the signature of the method, so that an entry keyed
+//by it does not hold on to the PSI tree of the method, and is replaced by the next analysis of the edited method.
+//Methods of anonymous classes may share a key, so a cached result is only used for the method it was computed for
+class MethodKey {
+    private final VirtualFile file;
+    private final String signature;
+
+    MethodKey(PsiMethod method) {
+        PsiFile psiFile = method.getContainingFile();
+        this.file = psiFile != null ? psiFile.getViewProvider().getVirtualFile() : null;
+        this.signature = PsiUtils.calculateSignature(method);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (o == null || getClass() != o.getClass())
+            return false;
+        MethodKey methodKey = (MethodKey) o;
+        return Objects.equals(file, methodKey.file) && signature.equals(methodKey.signature);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(file, signature);
+    }
+}
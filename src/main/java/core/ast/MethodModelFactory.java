@@ -0,0 +1,157 @@
+package core.ast;
+
+import com.intellij.lang.jvm.JvmModifier;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.*;
+import core.ast.decomposition.MethodBodyObject;
+import utils.AnalysisCache;
+
+import java.util.Collections;
+import java.util.List;
+
+//Builds the models of the methods of a project for both the ASTReader and the analysis of a single method.
+//A model is kept as long as the file of its method stays unmodified, so that a method already read into
+//a SystemObject is not modelled again when a selection inside it is analyzed. The same model is handed to every
+//caller, so it is never modified after it is built; what depends on the reading class is looked up from the model
+public class MethodModelFactory {
+    //rough size of the model of a method, per character of its text
+    private static final long BYTES_PER_CHARACTER = 16;
+    private final AnalysisCache<MethodKey, CachedModel> cache =
+            new AnalysisCache<>("model", model -> model.textLength * BYTES_PER_CHARACTER);
+
+    static MethodModelFactory getInstance(Project project) {
+        return ServiceManager.getService(project, MethodModelFactory.class);
+    }
+
+    AbstractMethodDeclaration getMethodDeclaration(PsiMethod methodDeclaration) {
+        PsiClass parentClass = methodDeclaration.getContainingClass();
+        String className = parentClass.getQualifiedName() != null ? parentClass.getQualifiedName() : parentClass.getName();
+        return getMethodDeclaration(methodDeclaration, className, Collections.emptyList());
+    }
+
+    /**
+     * @param className     qualified name of the class of the method
+     * @param classComments comments of the class sorted by start position, the ones inside the method are added
+     *                      to its model when it is built
+     */
+    AbstractMethodDeclaration getMethodDeclaration(PsiMethod methodDeclaration, String className,
+                                                   List<CommentObject> classComments) {
+        MethodKey key = new MethodKey(methodDeclaration);
+        CachedModel model = cache.get(key);
+        //a model built without comments is not reused when they are asked for
+        if (model != null && model.methodDeclaration.getMethodDeclaration() == methodDeclaration
+                && !isOutdated(model) && (model.withComments || classComments.isEmpty()))
+            return model.methodDeclaration;
+        AbstractMethodDeclaration methodDeclarationObject =
+                createMethodDeclaration(methodDeclaration, className, classComments);
+        //the models of edited or deleted methods are dropped first, so that they do not keep their PSI trees
+        cache.removeIf(MethodModelFactory::isOutdated);
+        cache.put(key, new CachedModel(methodDeclarationObject,
+                getModificationStamp(methodDeclaration), methodDeclaration.getTextLength(), !classComments.isEmpty()));
+        return methodDeclarationObject;
+    }
+
+    private static boolean isOutdated(CachedModel model) {
+        PsiMethod method = model.methodDeclaration.getMethodDeclaration();
+        return method == null || !method.isValid() || model.modificationStamp != getModificationStamp(method);
+    }
+
+    private static AbstractMethodDeclaration createMethodDeclaration(PsiMethod methodDeclaration, String className,
+                                                                     List<CommentObject> classComments) {
+        String methodName = methodDeclaration.getName();
+        final ConstructorObject constructorObject = new ConstructorObject();
+        constructorObject.setMethodDeclaration(methodDeclaration);
+        constructorObject.setName(methodName);
+        constructorObject.setClassName(className);
+        int methodDeclarationStartPosition = methodDeclaration.getStartOffsetInParent();
+        int methodDeclarationEndPosition = methodDeclarationStartPosition + methodDeclaration.getTextLength();
+        for (CommentObject comment : CommentObject.getCommentsWithin(classComments,
+                methodDeclarationStartPosition, methodDeclarationEndPosition)) {
+            constructorObject.addComment(comment);
+        }
+
+        if (methodDeclaration.hasModifier(JvmModifier.PUBLIC))
+            constructorObject.setAccess(Access.PUBLIC);
+        else if (methodDeclaration.hasModifier(JvmModifier.PROTECTED))
+            constructorObject.setAccess(Access.PROTECTED);
+        else if (methodDeclaration.hasModifier(JvmModifier.PRIVATE))
+            constructorObject.setAccess(Access.PRIVATE);
+        else
+            constructorObject.setAccess(Access.NONE);
+
+        PsiParameter[] parameters = methodDeclaration.getParameterList().getParameters();
+        for (PsiParameter parameter : parameters) {
+            String parameterType = parameter.getType().getCanonicalText();
+            TypeObject typeObject = TypeObject.extractTypeObject(parameterType);
+            if (parameter.isVarArgs()) {
+                typeObject.setArrayDimension(1);
+            }
+            ParameterObject parameterObject = new ParameterObject(typeObject, parameter.getName(), parameter.isVarArgs());
+            parameterObject.setSingleVariableDeclaration(parameter);
+            constructorObject.addParameter(parameterObject);
+        }
+
+        PsiCodeBlock methodBody = methodDeclaration.getBody();
+        if (methodBody != null) {
+            MethodBodyObject methodBodyObject = new MethodBodyObject(methodBody);
+            constructorObject.setMethodBody(methodBodyObject);
+        }
+
+        for (AnonymousClassDeclarationObject anonymous : constructorObject.getAnonymousClassDeclarations()) {
+            PsiAnonymousClass anonymousClassDeclaration = anonymous.getAnonymousClassDeclaration();
+            int anonymousClassDeclarationStartPosition = anonymousClassDeclaration.getStartOffsetInParent();
+            int anonymousClassDeclarationEndPosition = anonymousClassDeclarationStartPosition + anonymousClassDeclaration.getTextLength();
+            for (CommentObject comment : CommentObject.getCommentsWithin(constructorObject.commentList,
+                    anonymousClassDeclarationStartPosition, anonymousClassDeclarationEndPosition)) {
+                anonymous.addComment(comment);
+            }
+        }
+
+        if (methodDeclaration.isConstructor()) {
+            return constructorObject;
+        } else {
+            MethodObject methodObject = new MethodObject(methodDeclaration, constructorObject);
+            PsiAnnotation[] extendedModifiers = methodDeclaration.getAnnotations();
+            for (PsiAnnotation extendedModifier : extendedModifiers) {
+                if ("Test".equals(extendedModifier.getQualifiedName())) {
+                    methodObject.setTestAnnotation(true);
+                    break;
+                }
+            }
+            PsiType returnType = methodDeclaration.getReturnType();
+            String qualifiedName = returnType != null ? returnType.getCanonicalText() : null;
+            TypeObject typeObject = TypeObject.extractTypeObject(qualifiedName);
+            methodObject.setReturnType(typeObject);
+            if (methodDeclaration.hasModifier(JvmModifier.ABSTRACT))
+                methodObject.setAbstract(true);
+            if (methodDeclaration.hasModifier(JvmModifier.STATIC))
+                methodObject.setStatic(true);
+            if (methodDeclaration.hasModifier(JvmModifier.SYNCHRONIZED))
+                methodObject.setSynchronized(true);
+            if (methodDeclaration.hasModifier(JvmModifier.NATIVE))
+                methodObject.setNative(true);
+            return methodObject;
+        }
+    }
+
+    private static long getModificationStamp(PsiMethod method) {
+        PsiFile file = method.getContainingFile();
+        return file != null ? file.getModificationStamp() : -1;
+    }
+
+    private static class CachedModel {
+        private final AbstractMethodDeclaration methodDeclaration;
+        private final long modificationStamp;
+        private final int textLength;
+        private final boolean withComments;
+
+        private CachedModel(AbstractMethodDeclaration methodDeclaration, long modificationStamp, int textLength,
+                            boolean withComments) {
+            this.methodDeclaration = methodDeclaration;
+            this.modificationStamp = modificationStamp;
+            this.textLength = textLength;
+            this.withComments = withComments;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package core.ast;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiMethod;
+import core.ast.decomposition.cfg.PDG;
+import core.ast.decomposition.cfg.PDGSnapshot;
+import utils.AnalysisOptions;
+import utils.PsiUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+
+//Keeps snapshots of analyzed methods on disk across restarts, keyed by the content of their file and their signature,
+//so that any edit of the file makes the snapshots of its methods unreachable
+class PDGDiskCache {
+    private static final Logger LOG = Logger.getInstance(PDGDiskCache.class);
+    private static final String EXTENSION = ".pdg";
+    //snapshots that were not read for this long are deleted
+    private static final long EXPIRATION_TIME = TimeUnit.DAYS.toMillis(30);
+    private static volatile boolean expiredSnapshotsDeleted;
+
+    static PDGSnapshot load(PsiMethod method) {
+        if (!AnalysisOptions.isDiskCacheEnabled())
+            return null;
+        String key = getKey(method);
+        File file = getFile(key);
+        if (!file.isFile())
+            return null;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            //the snapshot outlives the channel, and a file that stays mapped cannot be replaced on Windows
+            ByteBuffer heapBuffer = ByteBuffer.allocate(buffer.remaining());
+            heapBuffer.put(buffer);
+            heapBuffer.flip();
+            file.setLastModified(System.currentTimeMillis());
+            return PDGSnapshot.read(heapBuffer, key);
+        } catch (IOException e) {
+            LOG.info("Could not read the analysis of " + PsiUtils.calculateSignature(method), e);
+            return null;
+        }
+    }
+
+    static void store(PsiMethod method, PDG pdg) {
+        if (!AnalysisOptions.isDiskCacheEnabled())
+            return;
+        String key = getKey(method);
+        byte[] snapshot = PDGSnapshot.write(pdg, key);
+        if (snapshot == null)
+            return;
+        File directory = getDirectory();
+        deleteExpiredSnapshots(directory);
+        Path temporaryFile = null;
+        try {
+            Files.createDirectories(directory.toPath());
+            temporaryFile = Files.createTempFile(directory.toPath(), "pdg", ".tmp");
+            Files.write(temporaryFile, snapshot);
+            Files.move(temporaryFile, getFile(key).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            LOG.info("Could not store the analysis of " + PsiUtils.calculateSignature(method), e);
+            try {
+                if (temporaryFile != null)
+                    Files.deleteIfExists(temporaryFile);
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static void deleteExpiredSnapshots(File directory) {
+        if (expiredSnapshotsDeleted)
+            return;
+        expiredSnapshotsDeleted = true;
+        File[] files = directory.listFiles();
+        if (files == null)
+            return;
+        long expirationTime = System.currentTimeMillis() - EXPIRATION_TIME;
+        for (File file : files) {
+            if (file.lastModified() < expirationTime)
+                file.delete();
+        }
+    }
+
+    private static File getDirectory() {
+        return new File(PathManager.getSystemPath(), "extract-method" + File.separator + "pdg");
+    }
+
+    private static File getFile(String key) {
+        return new File(getDirectory(), hash(key) + EXTENSION);
+    }
+
+    private static String getKey(PsiMethod method) {
+        PsiFile file = method.getContainingFile();
+        return hash(file.getViewProvider().getContents().toString()) + ' ' + PsiUtils.calculateSignature(method);
+    }
+
+    private static String hash(String text) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hash = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hash.append(String.format("%02x", b));
+            }
+            return hash.toString();
+        } catch (NoSuchAlgorithmException e) {
+            //every Java platform is required to support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,34 +1,215 @@
 package core.ast;
 
+import com.intellij.concurrency.JobLauncher;
 import com.intellij.lang.jvm.JvmModifier;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.psi.*;
-import core.ast.decomposition.MethodBodyObject;
 import core.ast.decomposition.cfg.*;
+import utils.AnalysisMetrics;
+import utils.AnalysisMetrics.Phase;
+import utils.AnalysisMetrics.PhaseMeasurement;
+import utils.AnalysisOptions;
+import utils.PsiUtils;
 
 import java.util.*;
 
 public class PartialMethodExtractor {
 
     public static List<ASTSlice> getOpportunities(PsiMethod method, PsiElement firstElement, PsiElement lastElement) {
-        AbstractMethodDeclaration declaration = processMethodDeclaration(method);
-        CFG cfg = new CFG(declaration);
         // Under what circumstances can this situation occur?
         if (method.getContainingClass() == null)
             return null;
-        PDG pdg = new PDG(cfg, method.getContainingFile(), getFieldObjects(method.getContainingClass()));
-        PDGSelection selection = new PDGSelection(pdg, firstElement, lastElement);
-        List<ASTSlice> slices = new ArrayList<>();
-        for (PsiVariable variableDeclaration : pdg.getVariableDeclarationsInMethod()) {
-            PlainVariable variable = new PlainVariable(variableDeclaration);
-            if (selection.isAssigned(variable)) {
-                PDGSelectionSlice union = new PDGSelectionSlice(selection, variable);
-                if (union.isValid()){
-                    ASTSlice slice = new ASTSlice(union);
-                    slices.add(slice);
+        AnalysisMetrics metrics = AnalysisMetrics.start(PsiUtils.calculateSignature(method));
+        AnalysisBudget budget = AnalysisBudget.fromOptions();
+        try {
+            PDG pdg = getPDG(method, budget);
+            recordSizes(pdg);
+            //slicing gets its own time, so that a slow build of an exact PDG does not leave it none
+            AnalysisBudget slicingBudget = budget.forSlicing();
+            PDGSelection selection;
+            try (PhaseMeasurement ignored = AnalysisMetrics.measure(Phase.SELECTION)) {
+                selection = new PDGSelection(pdg, firstElement, lastElement);
+            }
+            List<ASTSlice> slices = new ArrayList<>();
+            boolean partial = !addSlices(pdg, selection, slicingBudget, slices);
+            if (partial) {
+                for (ASTSlice slice : slices) {
+                    slice.setApproximate(true);
                 }
             }
+            AnalysisMetrics.setSize("slices", slices.size());
+            return slices;
+        } finally {
+            metrics.finish();
+        }
+    }
+
+    //the slices of the most promising ranges of statements of the method, at any nesting level, best first
+    public static List<ASTSlice> getBestOpportunities(PsiMethod method, int limit) {
+        if (method.getContainingClass() == null)
+            return null;
+        AnalysisMetrics metrics = AnalysisMetrics.start(PsiUtils.calculateSignature(method));
+        AnalysisBudget budget = AnalysisBudget.fromOptions();
+        try {
+            PDG pdg = getPDG(method, budget);
+            recordSizes(pdg);
+            AnalysisBudget slicingBudget = budget.forSlicing();
+            //ranges of the same block often yield the same slices
+            Map<List<Object>, ASTSlice> uniqueSlices = new LinkedHashMap<>();
+            boolean[] partial = {false};
+            new PDGSelectionSweep(pdg).sweep(selection -> {
+                List<ASTSlice> slices = new ArrayList<>();
+                partial[0] = !addSlices(pdg, selection, slicingBudget, slices);
+                for (ASTSlice slice : slices) {
+                    uniqueSlices.putIfAbsent(Arrays.asList(slice.getLocalVariableCriterion(),
+                            slice.getSliceNodeIds(), slice.getRemovableNodeIds()), slice);
+                }
+                return !partial[0];
+            });
+            List<ASTSlice> slices = new ArrayList<>(uniqueSlices.values());
+            slices.sort(Comparator.comparingInt(PartialMethodExtractor::getBenefit).reversed()
+                    .thenComparingInt(slice -> slice.getPassedParameters().size()));
+            if (slices.size() > limit)
+                slices = new ArrayList<>(slices.subList(0, limit));
+            if (partial[0]) {
+                for (ASTSlice slice : slices) {
+                    slice.setApproximate(true);
+                }
+            }
+            AnalysisMetrics.setSize("slices", slices.size());
+            return slices;
+        } finally {
+            metrics.finish();
+        }
+    }
+
+    //the removed statements count up to the size of what is left in the method, and duplicated statements count against
+    private static int getBenefit(ASTSlice slice) {
+        int removableStatements = slice.getNumberOfRemovableStatements();
+        return Math.min(removableStatements, slice.getMethodSize() - removableStatements)
+                - slice.getNumberOfDuplicatedStatements();
+    }
+
+    //slices the selection for every variable assigned in it, and returns false if the budget ran out before all were examined
+    private static boolean addSlices(PDG pdg, PDGSelection selection, AnalysisBudget budget, List<ASTSlice> slices) {
+        List<PlainVariable> variables = new ArrayList<>();
+        //the pre-filter computes the backward slices the slicing reuses, so it is measured and limited as slicing
+        try (PhaseMeasurement ignored = AnalysisMetrics.measure(Phase.SLICING)) {
+            for (PsiVariable variableDeclaration : pdg.getVariableDeclarationsInMethod()) {
+                ProgressManager.checkCanceled();
+                PlainVariable variable = new PlainVariable(variableDeclaration);
+                //a variable that is dead after the selection is not worth extracting, and neither is a slice too small to be valid
+                if (selection.isAssigned(variable)
+                        && (!AnalysisOptions.isLivenessPruningEnabled() || selection.isLiveAfterSelection(variable))
+                        && PDGSelectionSlice.mayBeValid(selection, variable, budget))
+                    variables.add(variable);
+            }
+        } catch (AnalysisBudgetExceededException e) {
+            return false;
+        }
+        if (AnalysisOptions.isParallelSlicingEnabled() && variables.size() > 1)
+            return addSlicesInParallel(pdg, selection, budget, variables, slices);
+        for (PlainVariable variable : variables) {
+            ProgressManager.checkCanceled();
+            PDGSelectionSlice union;
+            try (PhaseMeasurement ignored = AnalysisMetrics.measure(Phase.SLICING)) {
+                union = new PDGSelectionSlice(selection, variable, budget);
+            } catch (AnalysisBudgetExceededException e) {
+                //the slices found so far are complete, only the remaining variables are not examined
+                return false;
+            }
+            addSlice(union, slices);
+        }
+        return true;
+    }
+
+    //the slices of the variables are computed by the bounded job pool of the platform along with the calling thread,
+    //under the progress indicator of the caller, and collected in the order of the variables,
+    //so that the result does not depend on which task finishes first
+    private static boolean addSlicesInParallel(PDG pdg, PDGSelection selection, AnalysisBudget budget,
+                                               List<PlainVariable> variables, List<ASTSlice> slices) {
+        //the tasks only read the PDG once no data dependence is left to create on demand
+        pdg.resolveAllDataDependencies();
+        AnalysisMetrics metrics = AnalysisMetrics.getCurrent();
+        PDGSelectionSlice[] unions = new PDGSelectionSlice[variables.size()];
+        List<Integer> indices = new ArrayList<>();
+        for (int i = 0; i < variables.size(); i++) {
+            indices.add(i);
+        }
+        //a task exhausting the budget stops the ones not started yet, and leaves its own slice missing
+        JobLauncher.getInstance().invokeConcurrentlyUnderProgress(indices,
+                ProgressManager.getInstance().getProgressIndicator(), i -> {
+            try (PhaseMeasurement ignored = AnalysisMetrics.attach(metrics);
+                 PhaseMeasurement ignored2 = AnalysisMetrics.measure(Phase.SLICING)) {
+                unions[i] = new PDGSelectionSlice(selection, variables.get(i), budget);
+                return true;
+            } catch (AnalysisBudgetExceededException e) {
+                return false;
+            }
+        });
+        for (PDGSelectionSlice union : unions) {
+            //the slices found before the first missing one are complete, as with sequential slicing
+            if (union == null)
+                return false;
+            addSlice(union, slices);
+        }
+        return true;
+    }
+
+    //the AST slices read the PSI, so they are built in the calling thread
+    private static void addSlice(PDGSelectionSlice union, List<ASTSlice> slices) {
+        if (union.isValid()){
+            try (PhaseMeasurement ignored = AnalysisMetrics.measure(Phase.AST_SLICES)) {
+                slices.add(new ASTSlice(union));
+            }
+        }
+    }
+
+    private static void recordSizes(PDG pdg) {
+        AnalysisMetrics.setSize("nodes", pdg.getNodes().size());
+        for (Map.Entry<PDGDependenceType, Integer> numberOfEdges : pdg.getNumberOfEdgesByType().entrySet()) {
+            AnalysisMetrics.setSize(numberOfEdges.getKey().name().toLowerCase() + " edges", numberOfEdges.getValue());
         }
-        return slices;
+        AnalysisMetrics.setSize("variables", pdg.getVariableDeclarationsAndAccessedFieldsInMethod().size());
+    }
+
+    //warms the analysis of the method, so that a later selection inside it only needs the slicing step.
+    //The PDG is completed before it is cached, since it is then read by several threads at once.
+    //Only these complete PDGs are stored on disk, so that neither the deferred dependences nor the file
+    //are on the way of an analysis the user waits for
+    public static void precompute(PsiMethod method) {
+        MethodAnalysisCache cache = MethodAnalysisCache.getInstance(method.getProject());
+        if (method.getContainingClass() == null || cache.get(method) != null)
+            return;
+        PDG pdg = buildPDG(method, AnalysisBudget.fromOptions());
+        pdg.precomputeSliceData();
+        //an approximation is not stored, so that it is not mistaken for the precise analysis after a restart
+        if (!pdg.isRestored() && !pdg.isApproximate())
+            PDGDiskCache.store(method, pdg);
+        cache.put(method, pdg);
+    }
+
+    //only the PDGs completed by the speculative analysis are shared; one built here still creates data dependences
+    //on demand while it is sliced, so it stays with the caller
+    private static PDG getPDG(PsiMethod method, AnalysisBudget budget) {
+        if (AnalysisOptions.isSpeculativeAnalysisEnabled()) {
+            PDG pdg = MethodAnalysisCache.getInstance(method.getProject()).get(method);
+            if (pdg != null)
+                return pdg;
+        }
+        return buildPDG(method, budget);
+    }
+
+    private static PDG buildPDG(PsiMethod method, AnalysisBudget budget) {
+        AbstractMethodDeclaration declaration;
+        Set<FieldObject> fields;
+        try (PhaseMeasurement ignored = AnalysisMetrics.measure(Phase.MODEL_BUILD)) {
+            declaration = MethodModelFactory.getInstance(method.getProject()).getMethodDeclaration(method);
+            fields = getFieldObjects(method.getContainingClass());
+        }
+        CFG cfg = new CFG(declaration);
+        PDGSnapshot snapshot = PDGDiskCache.load(method);
+        return new PDG(cfg, method.getContainingFile(), fields, snapshot, budget);
     }
 
     private static Set<FieldObject> getFieldObjects(PsiClass parentClass) {
@@ -60,79 +241,4 @@ public class PartialMethodExtractor {
         return set;
     }
 
-    private static AbstractMethodDeclaration processMethodDeclaration(PsiMethod methodDeclaration) {
-        PsiClass parentClass = methodDeclaration.getContainingClass();
-        String methodName = methodDeclaration.getName();
-        final ConstructorObject constructorObject = new ConstructorObject();
-        constructorObject.setMethodDeclaration(methodDeclaration);
-        constructorObject.setName(methodName);
-        constructorObject.setClassName(parentClass.getName());
-
-        if (methodDeclaration.hasModifier(JvmModifier.PUBLIC))
-            constructorObject.setAccess(Access.PUBLIC);
-        else if (methodDeclaration.hasModifier(JvmModifier.PROTECTED))
-            constructorObject.setAccess(Access.PROTECTED);
-        else if (methodDeclaration.hasModifier(JvmModifier.PRIVATE))
-            constructorObject.setAccess(Access.PRIVATE);
-        else
-            constructorObject.setAccess(Access.NONE);
-
-        PsiParameter[] parameters = methodDeclaration.getParameterList().getParameters();
-        for (PsiParameter parameter : parameters) {
-            String parameterType = parameter.getType().getCanonicalText();
-            TypeObject typeObject = TypeObject.extractTypeObject(parameterType);
-            if (parameter.isVarArgs()) {
-                typeObject.setArrayDimension(1);
-            }
-            ParameterObject parameterObject = new ParameterObject(typeObject, parameter.getName(), parameter.isVarArgs());
-            parameterObject.setSingleVariableDeclaration(parameter);
-            constructorObject.addParameter(parameterObject);
-        }
-
-        PsiCodeBlock methodBody = methodDeclaration.getBody();
-        if (methodBody != null) {
-            MethodBodyObject methodBodyObject = new MethodBodyObject(methodBody);
-            constructorObject.setMethodBody(methodBodyObject);
-        }
-
-        for (AnonymousClassDeclarationObject anonymous : constructorObject.getAnonymousClassDeclarations()) {
-            PsiAnonymousClass anonymousClassDeclaration = anonymous.getAnonymousClassDeclaration();
-            int anonymousClassDeclarationStartPosition = anonymousClassDeclaration.getStartOffsetInParent();
-            int anonymousClassDeclarationEndPosition = anonymousClassDeclarationStartPosition + anonymousClassDeclaration.getTextLength();
-            for (CommentObject comment : constructorObject.commentList) {
-                int commentStartPosition = comment.getStartPosition();
-                int commentEndPosition = commentStartPosition + comment.getLength();
-                if (anonymousClassDeclarationStartPosition <= commentStartPosition && anonymousClassDeclarationEndPosition >= commentEndPosition) {
-                    anonymous.addComment(comment);
-                }
-            }
-        }
-
-        if (methodDeclaration.isConstructor()) {
-            return constructorObject;
-        } else {
-            MethodObject methodObject = new MethodObject(methodDeclaration, constructorObject);
-            PsiAnnotation[] extendedModifiers = methodDeclaration.getAnnotations();
-            for (PsiAnnotation extendedModifier : extendedModifiers) {
-                if ("Test".equals(extendedModifier.getQualifiedName())) {
-                    methodObject.setTestAnnotation(true);
-                    break;
-                }
-            }
-            PsiType returnType = methodDeclaration.getReturnType();
-            String qualifiedName = returnType != null ? returnType.getCanonicalText() : null;
-            TypeObject typeObject = TypeObject.extractTypeObject(qualifiedName);
-            methodObject.setReturnType(typeObject);
-            if (methodDeclaration.hasModifier(JvmModifier.ABSTRACT))
-                methodObject.setAbstract(true);
-            if (methodDeclaration.hasModifier(JvmModifier.STATIC))
-                methodObject.setStatic(true);
-            if (methodDeclaration.hasModifier(JvmModifier.SYNCHRONIZED))
-                methodObject.setSynchronized(true);
-            if (methodDeclaration.hasModifier(JvmModifier.NATIVE))
-                methodObject.setNative(true);
-
-            return methodObject;
-        }
-    }
 }
@@ -1,83 +1,161 @@
 package core.ast.decomposition.cfg;
 
+import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.*;
+import com.intellij.psi.util.PsiTreeUtil;
 import com.sun.istack.NotNull;
 
 import java.util.*;
 
+//A slice kept by the tool window while the user reviews it. It holds no PSI element and no graph:
+//the statements are ranges of offsets within the method and the few anchors are smart pointers,
+//resolved again when they are asked for
 public class ASTSlice {
+    public enum Validation {
+        NOT_VALIDATED,
+        COMPILES,
+        DOES_NOT_COMPILE,
+        //the dry run itself failed, which says nothing about the code
+        UNKNOWN
+    }
+
     @NotNull
-    private final PsiClass sourceTypeDeclaration;
-    @NotNull
-    private final PsiMethod sourceMethodDeclaration;
-    @NotNull
-    private final PsiFile psiFile;
-    @NotNull
-    private PsiStatement variableCriterionDeclarationStatement;
-    @NotNull
-    private PsiStatement extractedMethodInvocationInsertionStatement;
-    private PsiVariable localVariableCriterion;
-    private Set<PDGNode> sliceNodes;
-    private Set<PsiStatement> sliceStatements;
-    private Set<PsiStatement> removableStatements;
-    private Set<PsiStatement> duplicatedStatements;
-    private Set<PsiVariable> passedParameters;
+    private final SmartPsiElementPointer<PsiMethod> sourceMethodDeclaration;
+    private final SmartPsiElementPointer<PsiStatement> variableCriterionDeclarationStatement;
+    private final SmartPsiElementPointer<PsiStatement> extractedMethodInvocationInsertionStatement;
+    private final SmartPsiElementPointer<PsiVariable> localVariableCriterion;
+    private final List<SmartPsiElementPointer<PsiVariable>> passedParameters;
+    //the text of the method, so that the offsets of statements are not used once it changed
+    private final int methodTextLength;
+    private final int methodTextHash;
+    //start and end offsets of the statements relative to the start of the method, in pairs
+    private final int[] sliceStatementRanges;
+    private final int[] removableStatementRanges;
+    private final BitSet sliceNodeIds;
+    private final BitSet removableNodeIds;
 
     private String extractedMethodName;
     private boolean declarationOfVariableCriterionBelongsToSliceNodes;
     private boolean declarationOfVariableCriterionBelongsToRemovableNodes;
     private boolean isObjectSlice;
+    private boolean approximate;
     private int methodSize;
+    private volatile Validation validation = Validation.NOT_VALIDATED;
 
     public ASTSlice(PDGSelectionSlice pdgSliceUnion) {
-        sourceMethodDeclaration = pdgSliceUnion.getPdg().getMethod().getMethodDeclaration();
-        sourceTypeDeclaration = sourceMethodDeclaration.getContainingClass();
-        sliceNodes = pdgSliceUnion.getSliceNodes();
-        sliceStatements = new LinkedHashSet<>();
-        for (PDGNode node : sliceNodes) {
-            sliceStatements.add(node.getASTStatement());
-        }
-        removableStatements = new LinkedHashSet<>();
-        for (PDGNode node : pdgSliceUnion.getRemovableNodes()) {
-            removableStatements.add(node.getASTStatement());
-        }
-        duplicatedStatements = new LinkedHashSet<>(sliceStatements);
-        duplicatedStatements.removeAll(removableStatements);
+        PsiMethod method = pdgSliceUnion.getPdg().getMethod().getMethodDeclaration();
+        SmartPointerManager pointerManager = SmartPointerManager.getInstance(method.getProject());
+        sourceMethodDeclaration = pointerManager.createSmartPsiElementPointer(method);
+        String methodText = method.getText();
+        methodTextLength = methodText.length();
+        methodTextHash = methodText.hashCode();
+        int methodStartOffset = method.getTextRange().getStartOffset();
+        Set<PDGNode> sliceNodes = pdgSliceUnion.getSliceNodes();
+        sliceNodeIds = new BitSet();
+        sliceStatementRanges = getStatementRanges(sliceNodes, sliceNodeIds, methodStartOffset);
+        removableNodeIds = new BitSet();
+        removableStatementRanges = getStatementRanges(pdgSliceUnion.getRemovableNodes(), removableNodeIds, methodStartOffset);
         Set<PsiVariable> variableDeclarationsAndAccessedFields =
                 pdgSliceUnion.getPdg().getVariableDeclarationsAndAccessedFieldsInMethod();
         AbstractVariable criterion = pdgSliceUnion.getBaseVariable();
+        PsiVariable criterionDeclaration = null;
         for (PsiVariable variableDeclaration : variableDeclarationsAndAccessedFields) {
             if (variableDeclaration.equals(criterion.getOrigin())) {
-                localVariableCriterion = variableDeclaration;
-                extractedMethodName = Objects.requireNonNull(localVariableCriterion.getNameIdentifier()).getText();
+                criterionDeclaration = variableDeclaration;
+                extractedMethodName = Objects.requireNonNull(criterionDeclaration.getNameIdentifier()).getText();
                 break;
             }
         }
-        passedParameters = new LinkedHashSet<>();
+        localVariableCriterion = criterionDeclaration != null ?
+                pointerManager.createSmartPsiElementPointer(criterionDeclaration) : null;
+        passedParameters = new ArrayList<>();
         for (AbstractVariable variable : pdgSliceUnion.getPassedParameters()) {
             for (PsiVariable variableDeclaration : variableDeclarationsAndAccessedFields) {
                 if (variableDeclaration.equals(variable.getOrigin())) {
-                    passedParameters.add(variableDeclaration);
+                    passedParameters.add(pointerManager.createSmartPsiElementPointer(variableDeclaration));
                     break;
                 }
             }
         }
         PDGNode declarationOfVariableCriterionNode = pdgSliceUnion.getDeclarationOfVariableCriterion();
-        if (declarationOfVariableCriterionNode != null)
-            variableCriterionDeclarationStatement = declarationOfVariableCriterionNode.getASTStatement();
-        extractedMethodInvocationInsertionStatement = pdgSliceUnion.getExtractedMethodInvocationInsertionNode().getASTStatement();
+        PsiStatement declarationStatement = declarationOfVariableCriterionNode != null ?
+                declarationOfVariableCriterionNode.getASTStatement() : null;
+        variableCriterionDeclarationStatement = declarationStatement != null ?
+                pointerManager.createSmartPsiElementPointer(declarationStatement) : null;
+        PsiStatement insertionStatement = pdgSliceUnion.getExtractedMethodInvocationInsertionNode().getASTStatement();
+        extractedMethodInvocationInsertionStatement = insertionStatement != null ?
+                pointerManager.createSmartPsiElementPointer(insertionStatement) : null;
         declarationOfVariableCriterionBelongsToSliceNodes = pdgSliceUnion.declarationOfVariableCriterionBelongsToSliceNodes();
         declarationOfVariableCriterionBelongsToRemovableNodes = pdgSliceUnion.declarationOfVariableCriterionBelongsToRemovableNodes();
-        psiFile = pdgSliceUnion.getPdg().getPsiFile();
         isObjectSlice = false;
+        approximate = pdgSliceUnion.getPdg().isApproximate();
         methodSize = pdgSliceUnion.getPdg().getTotalNumberOfStatements();
     }
 
+    private ASTSlice(ASTSlice slice, PsiMethod methodCopy) {
+        PsiFile fileCopy = methodCopy.getContainingFile();
+        SmartPointerManager pointerManager = SmartPointerManager.getInstance(methodCopy.getProject());
+        sourceMethodDeclaration = pointerManager.createSmartPsiElementPointer(methodCopy);
+        variableCriterionDeclarationStatement = copyPointer(slice.variableCriterionDeclarationStatement, fileCopy);
+        extractedMethodInvocationInsertionStatement = copyPointer(slice.extractedMethodInvocationInsertionStatement, fileCopy);
+        localVariableCriterion = copyPointer(slice.localVariableCriterion, fileCopy);
+        passedParameters = new ArrayList<>();
+        for (SmartPsiElementPointer<PsiVariable> passedParameter : slice.passedParameters) {
+            SmartPsiElementPointer<PsiVariable> passedParameterCopy = copyPointer(passedParameter, fileCopy);
+            if (passedParameterCopy != null)
+                passedParameters.add(passedParameterCopy);
+        }
+        methodTextLength = slice.methodTextLength;
+        methodTextHash = slice.methodTextHash;
+        sliceStatementRanges = slice.sliceStatementRanges;
+        removableStatementRanges = slice.removableStatementRanges;
+        sliceNodeIds = slice.sliceNodeIds;
+        removableNodeIds = slice.removableNodeIds;
+        extractedMethodName = slice.extractedMethodName;
+        declarationOfVariableCriterionBelongsToSliceNodes = slice.declarationOfVariableCriterionBelongsToSliceNodes;
+        declarationOfVariableCriterionBelongsToRemovableNodes = slice.declarationOfVariableCriterionBelongsToRemovableNodes;
+        isObjectSlice = slice.isObjectSlice;
+        approximate = slice.approximate;
+        methodSize = slice.methodSize;
+    }
+
+    //the same slice over a copy of its method, e.g. in a non-physical copy of its file
+    public ASTSlice copyTo(PsiMethod methodCopy) {
+        return new ASTSlice(this, methodCopy);
+    }
+
+    private static <T extends PsiElement> SmartPsiElementPointer<T> copyPointer(SmartPsiElementPointer<T> pointer, PsiFile fileCopy) {
+        T element = pointer != null ? pointer.getElement() : null;
+        if (element == null)
+            return null;
+        //elements outside of the file, e.g. fields of other classes, are shared by the copy
+        T elementCopy = fileCopy.getOriginalFile().equals(element.getContainingFile()) ?
+                PsiTreeUtil.findSameElementInCopy(element, fileCopy) : element;
+        return SmartPointerManager.getInstance(fileCopy.getProject()).createSmartPsiElementPointer(elementCopy);
+    }
+
+    private static int[] getStatementRanges(Set<PDGNode> nodes, BitSet nodeIds, int methodStartOffset) {
+        Set<PsiStatement> statements = new LinkedHashSet<>();
+        for (PDGNode node : nodes) {
+            nodeIds.set(node.getId());
+            if (node.getASTStatement() != null)
+                statements.add(node.getASTStatement());
+        }
+        int[] ranges = new int[statements.size() * 2];
+        int i = 0;
+        for (PsiStatement statement : statements) {
+            TextRange range = statement.getTextRange();
+            ranges[i++] = range.getStartOffset() - methodStartOffset;
+            ranges[i++] = range.getEndOffset() - methodStartOffset;
+        }
+        return ranges;
+    }
+
     public boolean isVariableCriterionDeclarationStatementIsDeeperNestedThanExtractedMethodInvocationInsertionStatement() {
         PsiStatement variableCriterionDeclarationStatement = getVariableCriterionDeclarationStatement();
-        if (variableCriterionDeclarationStatement != null) {
+        PsiStatement extractedMethodInvocationInsertionStatement = getExtractedMethodInvocationInsertionStatement();
+        if (variableCriterionDeclarationStatement != null && extractedMethodInvocationInsertionStatement != null) {
             int depthOfNestingForVariableCriterionDeclarationStatement = depthOfNesting(variableCriterionDeclarationStatement);
-            PsiStatement extractedMethodInvocationInsertionStatement = getExtractedMethodInvocationInsertionStatement();
             int depthOfNestingForExtractedMethodInvocationInsertionStatement = depthOfNesting(extractedMethodInvocationInsertionStatement);
             if (depthOfNestingForVariableCriterionDeclarationStatement > depthOfNestingForExtractedMethodInvocationInsertionStatement)
                 return true;
@@ -87,7 +165,7 @@ public class ASTSlice {
         return false;
     }
 
-    private int depthOfNesting(PsiStatement statement) {
+    private static int depthOfNesting(PsiStatement statement) {
         int depthOfNesting = 0;
         PsiElement parent = statement;
         while (!(parent instanceof PsiMethod)) {
@@ -97,40 +175,90 @@ public class ASTSlice {
         return depthOfNesting;
     }
 
+    //false once the method was deleted or edited, since its statements can no longer be found
+    public boolean isValid() {
+        return getMethodIfUnchanged() != null;
+    }
+
+    private PsiMethod getMethodIfUnchanged() {
+        PsiMethod method = sourceMethodDeclaration.getElement();
+        if (method == null || method.getTextLength() != methodTextLength || method.getText().hashCode() != methodTextHash)
+            return null;
+        return method;
+    }
+
+    //the statements of the method at the ranges, or none if the method changed
+    private Set<PsiStatement> resolveStatements(int[] ranges) {
+        Set<PsiStatement> statements = new LinkedHashSet<>();
+        PsiMethod method = getMethodIfUnchanged();
+        if (method == null)
+            return statements;
+        PsiFile file = method.getContainingFile();
+        int methodStartOffset = method.getTextRange().getStartOffset();
+        for (int i = 0; i < ranges.length; i += 2) {
+            int startOffset = methodStartOffset + ranges[i];
+            int endOffset = methodStartOffset + ranges[i + 1];
+            PsiElement element = file.findElementAt(startOffset);
+            while (element != null && !(element instanceof PsiStatement && element.getTextRange().getEndOffset() == endOffset
+                    && element.getTextRange().getStartOffset() == startOffset)) {
+                if (element.getTextRange().getStartOffset() < startOffset || element instanceof PsiMethod) {
+                    element = null;
+                    break;
+                }
+                element = element.getParent();
+            }
+            if (element != null)
+                statements.add((PsiStatement) element);
+        }
+        return statements;
+    }
+
     public PsiClass getSourceTypeDeclaration() {
-        return sourceTypeDeclaration;
+        PsiMethod method = getSourceMethodDeclaration();
+        return method != null ? method.getContainingClass() : null;
     }
 
     public PsiMethod getSourceMethodDeclaration() {
-        return sourceMethodDeclaration;
+        return sourceMethodDeclaration.getElement();
     }
 
     public PsiVariable getLocalVariableCriterion() {
-        return localVariableCriterion;
+        return localVariableCriterion != null ? localVariableCriterion.getElement() : null;
     }
 
     public Set<PsiVariable> getPassedParameters() {
-        return passedParameters;
+        Set<PsiVariable> variables = new LinkedHashSet<>();
+        for (SmartPsiElementPointer<PsiVariable> passedParameter : passedParameters) {
+            PsiVariable variable = passedParameter.getElement();
+            if (variable != null)
+                variables.add(variable);
+        }
+        return variables;
+    }
+
+    //the ids of the nodes in the PDG of the method, which identify the slice without resolving its statements
+    public BitSet getSliceNodeIds() {
+        return (BitSet) sliceNodeIds.clone();
     }
 
-    public Set<PDGNode> getSliceNodes() {
-        return sliceNodes;
+    public BitSet getRemovableNodeIds() {
+        return (BitSet) removableNodeIds.clone();
     }
 
     public Set<PsiStatement> getSliceStatements() {
-        return sliceStatements;
+        return resolveStatements(sliceStatementRanges);
     }
 
     public Set<PsiStatement> getRemovableStatements() {
-        return removableStatements;
+        return resolveStatements(removableStatementRanges);
     }
 
     private PsiStatement getVariableCriterionDeclarationStatement() {
-        return variableCriterionDeclarationStatement;
+        return variableCriterionDeclarationStatement != null ? variableCriterionDeclarationStatement.getElement() : null;
     }
 
     private PsiStatement getExtractedMethodInvocationInsertionStatement() {
-        return extractedMethodInvocationInsertionStatement;
+        return extractedMethodInvocationInsertionStatement != null ? extractedMethodInvocationInsertionStatement.getElement() : null;
     }
 
     public String getExtractedMethodName() {
@@ -150,7 +278,7 @@ public class ASTSlice {
     }
 
     public PsiFile getPsiFile() {
-        return psiFile;
+        return sourceMethodDeclaration.getContainingFile();
     }
 
 
@@ -158,35 +286,65 @@ public class ASTSlice {
         return isObjectSlice;
     }
 
+    //the slice may contain more statements than needed, or other slices of the selection may be missing,
+    //because the analysis exceeded its budget
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    public void setApproximate(boolean approximate) {
+        this.approximate = approximate;
+    }
+
+    //whether a dry run of the extraction compiled, set by the background validation
+    public Validation getValidation() {
+        return validation;
+    }
+
+    public void setValidation(Validation validation) {
+        this.validation = validation;
+    }
+
     public int getMethodSize() {
         return methodSize;
     }
 
     public String sliceToString() {
         StringBuilder sb = new StringBuilder();
-        for (PDGNode sliceNode : sliceNodes) {
-            sb.append(sliceNode.getStatement().toString());
+        for (PsiStatement sliceStatement : getSliceStatements()) {
+            sb.append(sliceStatement.getText());
         }
         return sb.toString();
     }
 
     public String toString() {
+        PsiMethod method = getSourceMethodDeclaration();
+        PsiVariable criterion = getLocalVariableCriterion();
         return //getSourceTypeDeclaration().getQualifiedName() + "::" +
-                getSourceMethodDeclaration().getName() + "." +
-                getLocalVariableCriterion().getName();
+                (method != null ? method.getName() : "?") + "." +
+                (criterion != null ? criterion.getName() : extractedMethodName) +
+                (approximate ? " (approximate)" : "") +
+                (validation == Validation.DOES_NOT_COMPILE ? " (does not compile)" : "") +
+                (validation == Validation.UNKNOWN ? " (could not be validated)" : "");
     }
 
     public int getNumberOfSliceStatements() {
-        return getSliceStatements().size();
+        return sliceStatementRanges.length / 2;
+    }
+
+    public int getNumberOfRemovableStatements() {
+        return removableStatementRanges.length / 2;
     }
 
     public int getNumberOfDuplicatedStatements() {
         int numberOfSliceStatements = getNumberOfSliceStatements();
-        int numberOfRemovableStatements = getRemovableStatements().size();
+        int numberOfRemovableStatements = getNumberOfRemovableStatements();
         return numberOfSliceStatements - numberOfRemovableStatements;
     }
 
     public Set<PsiStatement> getDuplicatedStatements() {
+        Set<PsiStatement> duplicatedStatements = getSliceStatements();
+        duplicatedStatements.removeAll(getRemovableStatements());
         return duplicatedStatements;
     }
 }
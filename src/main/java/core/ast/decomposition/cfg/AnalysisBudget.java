@@ -0,0 +1,57 @@
+package core.ast.decomposition.cfg;
+
+import utils.AnalysisOptions;
+
+import java.util.concurrent.TimeUnit;
+
+//Limits of one analysis: the number of statements analyzed precisely, the number of dependences and the time spent.
+//When a limit is exceeded, the PDG falls back to conservative dependences and slicing stops with the slices found so far
+public class AnalysisBudget {
+    static final AnalysisBudget UNLIMITED = new AnalysisBudget(Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+    private final int maximumNodes;
+    private final int maximumEdges;
+    private final long timeLimit;
+    private final long startTime;
+
+    public AnalysisBudget(int maximumNodes, int maximumEdges, long timeLimitInMilliseconds) {
+        this.maximumNodes = maximumNodes;
+        this.maximumEdges = maximumEdges;
+        this.timeLimit = timeLimitInMilliseconds == Long.MAX_VALUE ?
+                Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(timeLimitInMilliseconds);
+        this.startTime = System.nanoTime();
+    }
+
+    private AnalysisBudget(AnalysisBudget budget) {
+        this.maximumNodes = budget.maximumNodes;
+        this.maximumEdges = budget.maximumEdges;
+        this.timeLimit = budget.timeLimit;
+        this.startTime = System.nanoTime();
+    }
+
+    //the same limits, with the time counted from now on
+    public AnalysisBudget forSlicing() {
+        return this == UNLIMITED ? UNLIMITED : new AnalysisBudget(this);
+    }
+
+    public static AnalysisBudget fromOptions() {
+        return new AnalysisBudget(AnalysisOptions.getMaximumAnalyzedStatements(),
+                AnalysisOptions.getMaximumDependences(), AnalysisOptions.getAnalysisTimeLimit());
+    }
+
+    boolean allowsNodes(int numberOfNodes) {
+        return numberOfNodes <= maximumNodes;
+    }
+
+    void check(int numberOfEdges) {
+        if (numberOfEdges > maximumEdges)
+            throw new AnalysisBudgetExceededException("More than " + maximumEdges + " dependences");
+        checkTime();
+    }
+
+    void checkTime() {
+        if (System.nanoTime() - startTime > timeLimit)
+            throw new AnalysisBudgetExceededException("More than " +
+                    TimeUnit.NANOSECONDS.toMillis(timeLimit) + " ms spent");
+    }
+}
@@ -0,0 +1,7 @@
+package core.ast.decomposition.cfg;
+
+public class AnalysisBudgetExceededException extends RuntimeException {
+    AnalysisBudgetExceededException(String message) {
+        super(message);
+    }
+}
@@ -4,7 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 
 public class BasicBlock {
-    private static int blockNum = 0;
+    private static final ThreadLocal<int[]> blockNum = ThreadLocal.withInitial(() -> new int[1]);
     private int id;
     private CFGNode leader;
     private List<CFGNode> nodes;
@@ -13,8 +13,7 @@ public class BasicBlock {
     private BasicBlock nextBasicBlock;
 
     public BasicBlock(CFGNode node) {
-        blockNum++;
-        this.id = blockNum;
+        this.id = ++blockNum.get()[0];
         this.leader = node;
         node.setBasicBlock(this);
         this.nodes = new ArrayList<>();
@@ -82,7 +81,7 @@ public class BasicBlock {
     }
 
     public static void resetBlockNum() {
-        blockNum = 0;
+        blockNum.get()[0] = 0;
     }
 
     public String toString() {
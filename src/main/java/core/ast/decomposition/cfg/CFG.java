@@ -3,6 +3,9 @@ package core.ast.decomposition.cfg;
 import com.intellij.psi.*;
 import core.ast.decomposition.*;
 import core.ast.AbstractMethodDeclaration;
+import utils.AnalysisMetrics;
+import utils.AnalysisMetrics.Phase;
+import utils.AnalysisMetrics.PhaseMeasurement;
 
 import java.util.*;
 
@@ -15,6 +18,11 @@ public class CFG extends Graph {
     private Stack<List<CFGBranchConditionalNode>> unjoinedConditionalNodes;
     private Map<CFGBranchSwitchNode, List<CFGNode>> switchBreakMap;
     private Map<CFGBlockNode, List<CFGNode>> directlyNestedNodesInBlocks;
+    //reverse of directlyNestedNodesInBlocks, with the number of blocks enclosing each node
+    private Map<CFGNode, CFGBlockNode> enclosingBlockNodes;
+    private Map<CFGNode, Integer> blockNestingDepths;
+    private Map<CFGBranchNode, Set<CFGNode>> nestingMap;
+    private Map<CFGNode, CFGBranchNode> branchNestingParents;
     private BasicBlockCFG basicBlockCFG;
 
     public CFG(AbstractMethodDeclaration method) {
@@ -22,12 +30,18 @@ public class CFG extends Graph {
         this.unjoinedConditionalNodes = new Stack<>();
         this.switchBreakMap = new LinkedHashMap<>();
         this.directlyNestedNodesInBlocks = new LinkedHashMap<>();
+        this.enclosingBlockNodes = new HashMap<>();
+        this.blockNestingDepths = new HashMap<>();
         MethodBodyObject methodBody = method.getMethodBody();
         if (methodBody != null) {
             CompositeStatementObject composite = methodBody.getCompositeStatement();
-            process(new ArrayList<>(), composite);
+            try (PhaseMeasurement ignored = AnalysisMetrics.measure(Phase.CFG)) {
+                process(new ArrayList<>(), composite);
+            }
             GraphNode.resetNodeNum();
-            this.basicBlockCFG = new BasicBlockCFG(this);
+            try (PhaseMeasurement ignored = AnalysisMetrics.measure(Phase.BASIC_BLOCK_CFG)) {
+                this.basicBlockCFG = new BasicBlockCFG(this);
+            }
         }
     }
 
@@ -47,6 +61,40 @@ public class CFG extends Graph {
         return directlyNestedNodesInBlocks;
     }
 
+    //the try or synchronized block whose statements directly include the node
+    CFGBlockNode getEnclosingBlockNode(CFGNode node) {
+        return enclosingBlockNodes.get(node);
+    }
+
+    //the number of try and synchronized blocks the node is nested in
+    int getBlockNestingDepth(CFGNode node) {
+        return blockNestingDepths.getOrDefault(node, 0);
+    }
+
+    //the nodes directly nested in the body of each branch node, built on first use since the basic blocks are needed
+    Map<CFGBranchNode, Set<CFGNode>> getNestingMap() {
+        if (nestingMap == null) {
+            nestingMap = new LinkedHashMap<>();
+            branchNestingParents = new HashMap<>();
+            for (GraphNode node : nodes) {
+                if (node instanceof CFGBranchNode) {
+                    CFGBranchNode branchNode = (CFGBranchNode) node;
+                    Set<CFGNode> nestedNodes = branchNode.getImmediatelyNestedNodesFromAST();
+                    nestingMap.put(branchNode, nestedNodes);
+                    for (CFGNode nestedNode : nestedNodes) {
+                        branchNestingParents.putIfAbsent(nestedNode, branchNode);
+                    }
+                }
+            }
+        }
+        return nestingMap;
+    }
+
+    CFGBranchNode getBranchNestingParent(CFGNode node) {
+        getNestingMap();
+        return branchNestingParents.get(node);
+    }
+
     private List<CFGNode> process(List<CFGNode> previousNodes, CompositeStatementObject composite) {
         if (composite instanceof TryStatementObject) {
             CFGTryNode tryNode = new CFGTryNode(composite);
@@ -178,13 +226,9 @@ public class CFG extends Graph {
                 }
             }
         }
-        for (CFGBlockNode blockNode2 : directlyNestedNodesInBlocks.keySet()) {
-            List<CFGNode> nestedNodes = directlyNestedNodesInBlocks.get(blockNode2);
-            if (nestedNodes.contains(blockNode)) {
-                blockNode.setControlParent(blockNode2);
-                break;
-            }
-        }
+        CFGBlockNode enclosingBlockNode = enclosingBlockNodes.get(blockNode);
+        if (enclosingBlockNode != null)
+            blockNode.setControlParent(enclosingBlockNode);
     }
 
     private List<CFGNode> processDoStatement(List<CFGNode> previousNodes, CompositeStatementObject compositeStatement) {
@@ -478,6 +522,8 @@ public class CFG extends Graph {
             if (directlyNestedNode(node, (CompositeStatementObject) blockNode.getStatement())) {
                 List<CFGNode> directlyNestedNodes = directlyNestedNodesInBlocks.get(blockNode);
                 directlyNestedNodes.add(node);
+                enclosingBlockNodes.put(node, blockNode);
+                blockNestingDepths.put(node, 1 + getBlockNestingDepth(blockNode));
                 break;
             }
         }
@@ -599,7 +645,7 @@ public class CFG extends Graph {
     private void createTopDownFlow(List<CFGNode> previousNodes, CFGNode currentNode) {
         for (CFGNode previousNode : previousNodes) {
             Flow flow = new Flow(previousNode, currentNode);
-            int numberOfImmediateBlocks = getNumberOfImmediateBlocks(currentNode);
+            int numberOfImmediateBlocks = getBlockNestingDepth(currentNode);
             if (previousNode instanceof CFGBranchNode) {
                 if (currentNode.getId() == previousNode.getId() + 1 + numberOfImmediateBlocks &&
                         !(previousNode instanceof CFGBranchDoLoopNode))
@@ -617,15 +663,6 @@ public class CFG extends Graph {
         }
     }
 
-    private int getNumberOfImmediateBlocks(CFGNode node) {
-        for (CFGBlockNode tryNode : directlyNestedNodesInBlocks.keySet()) {
-            List<CFGNode> directlyNestedNodes = directlyNestedNodesInBlocks.get(tryNode);
-            if (directlyNestedNodes.contains(node))
-                return 1 + getNumberOfImmediateBlocks(tryNode);
-        }
-        return 0;
-    }
-
     private boolean isLoop(CompositeStatementObject compositeStatement) {
         return compositeStatement.getStatement() instanceof PsiWhileStatement
                 || compositeStatement.getStatement() instanceof PsiForStatement
@@ -4,14 +4,14 @@ import java.util.LinkedHashSet;
 import java.util.Set;
 
 public class GraphNode {
-    private static int nodeNum = 0;
+    //numbering is confined to the building thread, so that graphs of different methods can be built concurrently
+    private static final ThreadLocal<int[]> nodeNum = ThreadLocal.withInitial(() -> new int[1]);
     protected int id;
     protected Set<GraphEdge> incomingEdges;
     protected Set<GraphEdge> outgoingEdges;
 
     GraphNode() {
-        nodeNum++;
-        this.id = nodeNum;
+        this.id = ++nodeNum.get()[0];
         this.incomingEdges = new LinkedHashSet<>();
         this.outgoingEdges = new LinkedHashSet<>();
     }
@@ -29,6 +29,6 @@ public class GraphNode {
     }
 
     static void resetNodeNum() {
-        nodeNum = 0;
+        nodeNum.get()[0] = 0;
     }
 }
@@ -1,7 +1,12 @@
 package core.ast.decomposition.cfg;
 
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.psi.*;
 import core.ast.*;
+import utils.AnalysisMetrics;
+import utils.AnalysisMetrics.Phase;
+import utils.AnalysisMetrics.PhaseMeasurement;
+import utils.AnalysisOptions;
 
 import java.util.*;
 
@@ -13,19 +18,29 @@ public class PDG extends Graph {
     private Set<FieldObject> fieldsAccessedInMethod;
     private Map<PDGNode, Set<BasicBlock>> dominatedBlockMap;
     private PsiFile psiFile;
+    private PDGStatementOffsetIndex statementOffsetIndex;
+    private PDGFlowSearch flowSearch;
+    private boolean restored;
+    private boolean approximate;
+    private boolean antiAndOutputDependenciesDeferred;
+    //the variables whose data dependences are not created yet, with their defining nodes
+    private volatile Map<AbstractVariable, List<PDGNode>> deferredDefinitions;
+    private StaticSingleAssignment ssa;
+    //the defined attributes of every reference with their defining nodes, by the name of the reference
+    private Map<String, Map<CompositeVariable, LinkedHashSet<PDGNode>>> definedAttributesOfReferences;
 
     public PDG(CFG cfg, PsiFile psiFile, Set<FieldObject> accessedFields) {
+        this(cfg, psiFile, accessedFields, null, AnalysisBudget.UNLIMITED);
+    }
+
+    //takes the def/use sets and the dependences from the snapshot instead of analyzing the data flow,
+    //unless the snapshot does not match the statements of the method.
+    //The data flow of methods exceeding the budget is approximated by conservative dependences
+    public PDG(CFG cfg, PsiFile psiFile, Set<FieldObject> accessedFields, PDGSnapshot snapshot, AnalysisBudget budget) {
         this.cfg = cfg;
         this.psiFile = psiFile;
         this.entryNode = new PDGMethodEntryNode(cfg.getMethod());
-        this.nestingMap = new LinkedHashMap<>();
-        for (GraphNode node : cfg.nodes) {
-            CFGNode cfgNode = (CFGNode) node;
-            if (cfgNode instanceof CFGBranchNode) {
-                CFGBranchNode branchNode = (CFGBranchNode) cfgNode;
-                nestingMap.put(branchNode, branchNode.getImmediatelyNestedNodesFromAST());
-            }
-        }
+        this.nestingMap = cfg.getNestingMap();
         this.variableDeclarationsInMethod = new LinkedHashSet<>();
         this.fieldsAccessedInMethod = new LinkedHashSet<>();
         this.fieldsAccessedInMethod.addAll(accessedFields);
@@ -35,16 +50,69 @@ public class PDG extends Graph {
             variableDeclarationsInMethod.add(parameter);
         }
         variableDeclarationsInMethod.addAll(cfg.getMethod().getLocalVariableDeclarations());
-        createControlDependenciesFromEntryNode();
-        if (!nodes.isEmpty()) {
-            performAliasAnalysis();
-            createDataDependencies();
+        try (PhaseMeasurement ignored = AnalysisMetrics.measure(Phase.CONTROL_DEPENDENCES)) {
+            createControlDependenciesFromEntryNode();
+        }
+        try (PhaseMeasurement ignored = AnalysisMetrics.measure(Phase.DATA_DEPENDENCES)) {
+            this.restored = snapshot != null && snapshot.restore(this);
+        }
+        if (!restored && !nodes.isEmpty()) {
+            approximate = !budget.allowsNodes(nodes.size());
+            if (!approximate) {
+                try {
+                    try (PhaseMeasurement ignored = AnalysisMetrics.measure(Phase.ALIAS_ANALYSIS)) {
+                        performAliasAnalysis(budget);
+                    }
+                    try (PhaseMeasurement ignored = AnalysisMetrics.measure(Phase.DATA_DEPENDENCES)) {
+                        if (AnalysisOptions.isDemandDrivenEnabled())
+                            deferDataDependencies();
+                        else
+                            createDataDependencies(budget);
+                    }
+                } catch (AnalysisBudgetExceededException e) {
+                    removeDataDependencies();
+                    deferredDefinitions = null;
+                    ssa = null;
+                    antiAndOutputDependenciesDeferred = false;
+                    approximate = true;
+                }
+            }
+            if (approximate) {
+                try (PhaseMeasurement ignored = AnalysisMetrics.measure(Phase.DATA_DEPENDENCES)) {
+                    createConservativeDataDependencies();
+                }
+            }
         }
         this.dominatedBlockMap = new LinkedHashMap<>();
         GraphNode.resetNodeNum();
-        handleSwitchCaseNodes();
-        handleJumpNodes();
-        handleThrowExceptionNodes();
+        if (!restored) {
+            try (PhaseMeasurement ignored = AnalysisMetrics.measure(Phase.CONTROL_DEPENDENCES)) {
+                handleSwitchCaseNodes();
+                handleJumpNodes();
+                handleThrowExceptionNodes();
+            }
+        }
+        indexDefinedAttributesOfReferences();
+    }
+
+    public boolean isRestored() {
+        return restored;
+    }
+
+    //the data dependences are a conservative approximation, since the precise analysis exceeded its budget
+    public boolean isApproximate() {
+        return approximate;
+    }
+
+    public Map<PDGDependenceType, Integer> getNumberOfEdgesByType() {
+        Map<PDGDependenceType, Integer> numberOfEdges = new EnumMap<>(PDGDependenceType.class);
+        for (PDGDependenceType type : PDGDependenceType.values()) {
+            numberOfEdges.put(type, 0);
+        }
+        for (GraphEdge edge : edges) {
+            numberOfEdges.merge(((PDGDependence) edge).getType(), 1, Integer::sum);
+        }
+        return numberOfEdges;
     }
 
     public PDGMethodEntryNode getEntryNode() {
@@ -59,6 +127,13 @@ public class PDG extends Graph {
         return psiFile;
     }
 
+    //built on first use and shared by all selections over this PDG
+    PDGStatementOffsetIndex getStatementOffsetIndex() {
+        if (statementOffsetIndex == null)
+            statementOffsetIndex = new PDGStatementOffsetIndex(this);
+        return statementOffsetIndex;
+    }
+
     public Set<VariableDeclarationObject> getVariableDeclarationObjectsInMethod() {
         return variableDeclarationsInMethod;
     }
@@ -80,12 +155,9 @@ public class PDG extends Graph {
     }
 
     private PDGBlockNode isDirectlyNestedWithinBlockNode(PDGNode node) {
-        Map<CFGBlockNode, List<CFGNode>> directlyNestedNodesInBlocks = cfg.getDirectlyNestedNodesInBlocks();
-        for (CFGBlockNode blockNode : directlyNestedNodesInBlocks.keySet()) {
-            List<CFGNode> nestedNodes = directlyNestedNodesInBlocks.get(blockNode);
-            if (nestedNodes.contains(node.getCFGNode())) {
-                return (PDGBlockNode) blockNode.getPDGNode();
-            }
+        CFGBlockNode blockNode = cfg.getEnclosingBlockNode(node.getCFGNode());
+        if (blockNode != null) {
+            return (PDGBlockNode) blockNode.getPDGNode();
         }
         return null;
     }
@@ -146,27 +218,29 @@ public class PDG extends Graph {
         return nodes.iterator();
     }
 
+    //computes the selection-independent data used by slicing, so that a later selection only has to traverse edges
+    public void precomputeSliceData() {
+        getStatementOffsetIndex();
+        resolveAllDataDependencies();
+    }
+
     Map<CompositeVariable, LinkedHashSet<PDGNode>> getDefinedAttributesOfReference(PlainVariable reference) {
-        Map<CompositeVariable, LinkedHashSet<PDGNode>> definedPropertiesMap = new LinkedHashMap<>();
+        return definedAttributesOfReferences.getOrDefault(reference.getName(), Collections.emptyMap());
+    }
+
+    private void indexDefinedAttributesOfReferences() {
+        definedAttributesOfReferences = new HashMap<>();
         for (GraphNode node : nodes) {
             PDGNode pdgNode = (PDGNode) node;
             for (AbstractVariable definedVariable : pdgNode.definedVariables) {
                 if (definedVariable instanceof CompositeVariable) {
                     CompositeVariable compositeVariable = (CompositeVariable) definedVariable;
-                    if (compositeVariable.getName().equals(reference.getName())) {
-                        if (definedPropertiesMap.containsKey(compositeVariable)) {
-                            LinkedHashSet<PDGNode> nodeCriteria = definedPropertiesMap.get(compositeVariable);
-                            nodeCriteria.add(pdgNode);
-                        } else {
-                            LinkedHashSet<PDGNode> nodeCriteria = new LinkedHashSet<>();
-                            nodeCriteria.add(pdgNode);
-                            definedPropertiesMap.put(compositeVariable, nodeCriteria);
-                        }
-                    }
+                    definedAttributesOfReferences.computeIfAbsent(compositeVariable.getName(), name -> new LinkedHashMap<>())
+                            .computeIfAbsent(compositeVariable, variable -> new LinkedHashSet<>())
+                            .add(pdgNode);
                 }
             }
         }
-        return definedPropertiesMap;
     }
 
     Set<PDGNode> getAssignmentNodesOfVariableCriterion(AbstractVariable localVariableCriterion) {
@@ -191,54 +265,45 @@ public class PDG extends Graph {
     }
 
     private void handleThrowExceptionNodes() {
+        Map<CFGBlockNode, List<CFGNode>> directlyNestedNodesInBlocks = cfg.getDirectlyNestedNodesInBlocks();
         for (GraphNode node : this.nodes) {
             PDGNode pdgNode = (PDGNode) node;
             CFGNode cfgNode = pdgNode.getCFGNode();
             if (cfgNode instanceof CFGThrowNode || pdgNode.throwsException()) {
-                boolean matchingTryNode = false;
-                Map<CFGBlockNode, List<CFGNode>> directlyNestedNodesInBlocks = cfg.getDirectlyNestedNodesInBlocks();
-                for (CFGBlockNode blockNode : directlyNestedNodesInBlocks.keySet()) {
+                //the try blocks directly including the node or one of its control parents, in the order of the blocks
+                Map<CFGTryNode, CFGNode> matchingTryNodes = new TreeMap<>(Comparator.comparingInt(GraphNode::getId));
+                PDGNode controlParent = pdgNode;
+                while (controlParent != null && controlParent.getCFGNode() != null) {
+                    CFGNode directlyNestedNode = controlParent.getCFGNode();
+                    CFGBlockNode blockNode = cfg.getEnclosingBlockNode(directlyNestedNode);
                     if (blockNode instanceof CFGTryNode) {
                         CFGTryNode tryNode = (CFGTryNode) blockNode;
+                        CFGNode matchingNode = matchingTryNodes.get(tryNode);
                         List<CFGNode> directlyNestedNodes = directlyNestedNodesInBlocks.get(tryNode);
-                        for (CFGNode directlyNestedNode : directlyNestedNodes) {
-                            if (pdgNode.equals(directlyNestedNode.getPDGNode())
-                                    || isControlDependent(pdgNode, directlyNestedNode.getPDGNode())) {
-                                matchingTryNode = true;
-                                PDGControlDependence cd = new PDGControlDependence(tryNode.getPDGNode(), directlyNestedNode.getPDGNode(), true);
-                                edges.add(cd);
-                                break;
-                            }
-                        }
-                        if (matchingTryNode && cfgNode instanceof CFGThrowNode) {
-                            for (CFGNode directlyNestedNode : directlyNestedNodes) {
-                                if (directlyNestedNode.getPDGNode().getId() > pdgNode.getId()) {
-                                    PDGControlDependence cd = new PDGControlDependence(pdgNode, directlyNestedNode.getPDGNode(), false);
-                                    edges.add(cd);
-                                }
+                        if (matchingNode == null
+                                || directlyNestedNodes.indexOf(directlyNestedNode) < directlyNestedNodes.indexOf(matchingNode))
+                            matchingTryNodes.put(tryNode, directlyNestedNode);
+                    }
+                    controlParent = controlParent.getControlDependenceParent();
+                }
+                for (Map.Entry<CFGTryNode, CFGNode> matchingTryNode : matchingTryNodes.entrySet()) {
+                    CFGTryNode tryNode = matchingTryNode.getKey();
+                    PDGControlDependence cd = new PDGControlDependence(tryNode.getPDGNode(), matchingTryNode.getValue().getPDGNode(), true);
+                    edges.add(cd);
+                    if (cfgNode instanceof CFGThrowNode) {
+                        for (CFGNode directlyNestedNode : directlyNestedNodesInBlocks.get(tryNode)) {
+                            if (directlyNestedNode.getPDGNode().getId() > pdgNode.getId()) {
+                                PDGControlDependence falseCD = new PDGControlDependence(pdgNode, directlyNestedNode.getPDGNode(), false);
+                                edges.add(falseCD);
                             }
-                            break;
                         }
+                        break;
                     }
                 }
             }
         }
     }
 
-    private boolean isControlDependent(PDGNode node, PDGNode targetNode) {
-        for (GraphEdge edge : node.incomingEdges) {
-            PDGDependence dependence = (PDGDependence) edge;
-            if (dependence instanceof PDGControlDependence) {
-                PDGControlDependence controlDependence = (PDGControlDependence) dependence;
-                PDGNode srcPDGNode = (PDGNode) controlDependence.src;
-                if (srcPDGNode.equals(targetNode))
-                    return true;
-                return isControlDependent(srcPDGNode, targetNode);
-            }
-        }
-        return false;
-    }
-
     private void handleSwitchCaseNodes() {
         Map<PDGNode, Set<PDGNode>> switchCaseMap = new LinkedHashMap<>();
         Stack<PDGNode> switchNodeStack = new Stack<>();
@@ -444,7 +509,7 @@ public class PDG extends Graph {
                         PDGControlDependence controlDependence = new PDGControlDependence(parent, pdgBlockNode, true);
                         edges.add(controlDependence);
                         if (parent.equals(entryNode)) {
-                            createDataDependenciesFromEntryNode(pdgBlockNode);
+                            createDataDependenciesFromEntryNode(pdgBlockNode, Collections.emptySet());
                         }
                         //create data dependencies from other nodes
                         for (GraphNode node : nodes) {
@@ -527,159 +592,256 @@ public class PDG extends Graph {
     }
 
     private boolean isNested(CFGNode node) {
-        for (CFGBranchNode key : nestingMap.keySet()) {
-            Set<CFGNode> nestedNodes = nestingMap.get(key);
-            if (nestedNodes.contains(node))
-                return true;
-        }
-        return false;
+        return cfg.getBranchNestingParent(node) != null;
     }
 
-    private void performAliasAnalysis() {
+    private void performAliasAnalysis(AnalysisBudget budget) {
         PDGNode firstPDGNode = (PDGNode) nodes.toArray()[0];
         ReachingAliasSet reachingAliasSet = new ReachingAliasSet();
+        budget.checkTime();
         firstPDGNode.updateReachingAliasSet(reachingAliasSet);
-        aliasSearch(firstPDGNode, new LinkedHashSet<>(), false, reachingAliasSet);
+        getFlowSearch().searchAliases(firstPDGNode, reachingAliasSet);
+        budget.checkTime();
     }
 
-    private void createDataDependencies() {
+    private void createDataDependencies(AnalysisBudget budget) {
         PDGNode firstPDGNode = (PDGNode) nodes.toArray()[0];
-        createDataDependenciesFromEntryNode(firstPDGNode);
+        Set<AbstractVariable> ssaVariables = Collections.emptySet();
+        if (AnalysisOptions.isSsaEnabled()) {
+            ssaVariables = new StaticSingleAssignment(this, cfg).createDataDependencies(budget);
+            antiAndOutputDependenciesDeferred = true;
+        }
+        createDataDependenciesFromEntryNode(firstPDGNode, ssaVariables);
+        for (GraphNode node : nodes) {
+            ProgressManager.checkCanceled();
+            budget.check(edges.size());
+            PDGNode pdgNode = (PDGNode) node;
+            for (AbstractVariable variableInstruction : pdgNode.definedVariables) {
+                if (!ssaVariables.contains(variableInstruction))
+                    dataDependenceSearch(pdgNode, variableInstruction, pdgNode);
+                if (!antiAndOutputDependenciesDeferred)
+                    outputDependenceSearch(pdgNode, variableInstruction);
+            }
+            if (!antiAndOutputDependenciesDeferred) {
+                for (AbstractVariable variableInstruction : pdgNode.usedVariables) {
+                    antiDependenceSearch(pdgNode, variableInstruction);
+                }
+            }
+        }
+    }
+
+    //the anti and output dependences are not needed for slicing, so with the SSA def-use chains
+    //they are only searched when they are asked for
+    public synchronized void createAntiAndOutputDependencies() {
+        if (!antiAndOutputDependenciesDeferred)
+            return;
+        antiAndOutputDependenciesDeferred = false;
         for (GraphNode node : nodes) {
+            ProgressManager.checkCanceled();
             PDGNode pdgNode = (PDGNode) node;
             for (AbstractVariable variableInstruction : pdgNode.definedVariables) {
-                dataDependenceSearch(pdgNode, variableInstruction, pdgNode, new LinkedHashSet<>(), null);
-                outputDependenceSearch(pdgNode, variableInstruction, pdgNode, new LinkedHashSet<>(), null);
+                outputDependenceSearch(pdgNode, variableInstruction);
             }
             for (AbstractVariable variableInstruction : pdgNode.usedVariables) {
-                antiDependenceSearch(pdgNode, variableInstruction, pdgNode, new LinkedHashSet<>(), null);
+                antiDependenceSearch(pdgNode, variableInstruction);
             }
         }
     }
 
-    private void createDataDependenciesFromEntryNode(PDGNode pdgNode) {
+    private void createDataDependenciesFromEntryNode(PDGNode pdgNode, Set<AbstractVariable> ssaVariables) {
         for (AbstractVariable variableInstruction : entryNode.definedVariables) {
-            if (pdgNode.usesLocalVariable(variableInstruction)) {
-                PDGDataDependence dataDependence = new PDGDataDependence(entryNode, pdgNode, variableInstruction, null);
-                edges.add(dataDependence);
+            if (!ssaVariables.contains(variableInstruction))
+                createDataDependenciesFromEntryNode(pdgNode, variableInstruction);
+        }
+    }
+
+    private void createDataDependenciesFromEntryNode(PDGNode pdgNode, AbstractVariable variableInstruction) {
+        if (pdgNode.usesLocalVariable(variableInstruction)) {
+            PDGDataDependence dataDependence = new PDGDataDependence(entryNode, pdgNode, variableInstruction, null);
+            edges.add(dataDependence);
+        }
+        if (!pdgNode.definesLocalVariable(variableInstruction)) {
+            dataDependenceSearch(entryNode, variableInstruction, pdgNode);
+        } else if (entryNode.declaresLocalVariable(variableInstruction)) {
+            //create def-order data dependence edge
+            PDGDataDependence dataDependence = new PDGDataDependence(entryNode, pdgNode, variableInstruction, null);
+            edges.add(dataDependence);
+        }
+    }
+
+    //only the definitions of every variable are indexed; the data dependences of a variable are created
+    //when slicing first reaches a node using or defining it
+    private void deferDataDependencies() {
+        Map<AbstractVariable, List<PDGNode>> definitions = new LinkedHashMap<>();
+        for (AbstractVariable variableInstruction : entryNode.definedVariables) {
+            definitions.computeIfAbsent(variableInstruction, key -> new ArrayList<>()).add(entryNode);
+        }
+        for (GraphNode node : nodes) {
+            PDGNode pdgNode = (PDGNode) node;
+            for (AbstractVariable variableInstruction : pdgNode.definedVariables) {
+                definitions.computeIfAbsent(variableInstruction, key -> new ArrayList<>()).add(pdgNode);
             }
-            if (!pdgNode.definesLocalVariable(variableInstruction)) {
-                dataDependenceSearch(entryNode, variableInstruction, pdgNode, new LinkedHashSet<>(), null);
-            } else if (entryNode.declaresLocalVariable(variableInstruction)) {
-                //create def-order data dependence edge
-                PDGDataDependence dataDependence = new PDGDataDependence(entryNode, pdgNode, variableInstruction, null);
-                edges.add(dataDependence);
+            for (AbstractVariable variableInstruction : pdgNode.usedVariables) {
+                definitions.computeIfAbsent(variableInstruction, key -> new ArrayList<>());
             }
         }
+        deferredDefinitions = definitions;
+        if (AnalysisOptions.isSsaEnabled())
+            ssa = new StaticSingleAssignment(this, cfg);
+        antiAndOutputDependenciesDeferred = true;
     }
 
-    private void aliasSearch(PDGNode currentNode, Set<PDGNode> visitedNodes, boolean visitedFromLoopbackFlow, ReachingAliasSet reachingAliasSet) {
-        if (visitedNodes.contains(currentNode))
+    //the dependences of the node over its variables are complete afterwards,
+    //and creating the dependences of other variables later does not change them
+    void resolveDataDependencies(PDGNode node) {
+        //no lock is taken once every dependence is created, so that parallel slicing does not contend for the PDG
+        if (deferredDefinitions == null)
             return;
-        else
-            visitedNodes.add(currentNode);
-        CFGNode currentCFGNode = currentNode.getCFGNode();
-        for (GraphEdge edge : currentCFGNode.outgoingEdges) {
-            Flow flow = (Flow) edge;
-            if (!visitedFromLoopbackFlow || flow.isFalseControlFlow()) {
-                CFGNode srcCFGNode = (CFGNode) flow.src;
-                CFGNode dstCFGNode = (CFGNode) flow.dst;
-                PDGNode dstPDGNode = dstCFGNode.getPDGNode();
-                ReachingAliasSet reachingAliasSetCopy = reachingAliasSet.copy();
-                dstPDGNode.applyReachingAliasSet(reachingAliasSetCopy);
-                dstPDGNode.updateReachingAliasSet(reachingAliasSetCopy);
-                if (!(srcCFGNode instanceof CFGBranchDoLoopNode && flow.isTrueControlFlow())) {
-                    if (flow.isLoopbackFlow())
-                        aliasSearch(dstPDGNode, visitedNodes, true, reachingAliasSetCopy);
+        synchronized (this) {
+            if (deferredDefinitions == null)
+                return;
+            for (AbstractVariable variable : node.usedVariables) {
+                resolveDataDependencies(variable);
+            }
+            for (AbstractVariable variable : node.definedVariables) {
+                resolveDataDependencies(variable);
+            }
+        }
+    }
+
+    public synchronized void resolveAllDataDependencies() {
+        if (deferredDefinitions == null)
+            return;
+        for (AbstractVariable variable : new ArrayList<>(deferredDefinitions.keySet())) {
+            ProgressManager.checkCanceled();
+            resolveDataDependencies(variable);
+        }
+        deferredDefinitions = null;
+        ssa = null;
+    }
+
+    private void resolveDataDependencies(AbstractVariable variable) {
+        List<PDGNode> definingNodes = deferredDefinitions.get(variable);
+        if (definingNodes == null)
+            return;
+        if (ssa == null || !ssa.createDataDependencies(variable)) {
+            PDGNode firstPDGNode = (PDGNode) nodes.iterator().next();
+            for (PDGNode definingNode : definingNodes) {
+                for (AbstractVariable variableInstruction : definingNode.definedVariables) {
+                    if (!variableInstruction.equals(variable))
+                        continue;
+                    if (definingNode == entryNode)
+                        createDataDependenciesFromEntryNode(firstPDGNode, variableInstruction);
                     else
-                        aliasSearch(dstPDGNode, visitedNodes, false, reachingAliasSetCopy);
+                        dataDependenceSearch(definingNode, variableInstruction, definingNode);
                 }
             }
         }
+        //removed only once complete, so that a cancelled resolution is repeated
+        deferredDefinitions.remove(variable);
     }
 
-    private void dataDependenceSearch(PDGNode initialNode, AbstractVariable variableInstruction,
-                                      PDGNode currentNode, Set<PDGNode> visitedNodes, CFGBranchNode loop) {
-        if (visitedNodes.contains(currentNode))
-            return;
-        else
-            visitedNodes.add(currentNode);
-        CFGNode currentCFGNode = currentNode.getCFGNode();
-        for (GraphEdge edge : currentCFGNode.outgoingEdges) {
-            Flow flow = (Flow) edge;
-            CFGNode srcCFGNode = (CFGNode) flow.src;
-            CFGNode dstCFGNode = (CFGNode) flow.dst;
-            if (flow.isLoopbackFlow()) {
-                if (dstCFGNode instanceof CFGBranchLoopNode)
-                    loop = (CFGBranchLoopNode) dstCFGNode;
-                if (srcCFGNode instanceof CFGBranchDoLoopNode)
-                    loop = (CFGBranchDoLoopNode) srcCFGNode;
-            }
-            PDGNode dstPDGNode = dstCFGNode.getPDGNode();
+    private void removeDataDependencies() {
+        edges.removeIf(edge -> edge instanceof PDGAbstractDataDependence);
+        entryNode.incomingEdges.removeIf(edge -> edge instanceof PDGAbstractDataDependence);
+        entryNode.outgoingEdges.removeIf(edge -> edge instanceof PDGAbstractDataDependence);
+        for (GraphNode node : nodes) {
+            node.incomingEdges.removeIf(edge -> edge instanceof PDGAbstractDataDependence);
+            node.outgoingEdges.removeIf(edge -> edge instanceof PDGAbstractDataDependence);
+        }
+    }
+
+    //flow-insensitive over-approximation of the data dependences: every definition of a variable reaches every use of it,
+    //and references are assumed to alias, i.e. a definition of a.f reaches every use of x.f.
+    //Anti and output dependences are not created, since slicing does not follow them
+    private void createConservativeDataDependencies() {
+        Map<Object, Set<PDGNode>> usingNodes = new LinkedHashMap<>();
+        Map<AbstractVariable, Set<PDGNode>> definingNodes = new LinkedHashMap<>();
+        for (GraphNode node : nodes) {
+            PDGNode pdgNode = (PDGNode) node;
+            for (AbstractVariable usedVariable : pdgNode.usedVariables) {
+                usingNodes.computeIfAbsent(getMayAliasKey(usedVariable), key -> new LinkedHashSet<>()).add(pdgNode);
+            }
+            for (AbstractVariable definedVariable : pdgNode.definedVariables) {
+                definingNodes.computeIfAbsent(definedVariable, key -> new LinkedHashSet<>()).add(pdgNode);
+            }
+        }
+        List<PDGNode> sources = new ArrayList<>();
+        sources.add(entryNode);
+        for (GraphNode node : nodes) {
+            sources.add((PDGNode) node);
+        }
+        for (PDGNode srcNode : sources) {
+            ProgressManager.checkCanceled();
+            for (AbstractVariable definedVariable : srcNode.definedVariables) {
+                for (PDGNode dstNode : usingNodes.getOrDefault(getMayAliasKey(definedVariable), Collections.emptySet())) {
+                    if (dstNode.equals(srcNode))
+                        continue;
+                    for (AbstractVariable usedVariable : dstNode.usedVariables) {
+                        if (getMayAliasKey(usedVariable).equals(getMayAliasKey(definedVariable)))
+                            edges.add(new PDGDataDependence(srcNode, dstNode, usedVariable, null));
+                    }
+                }
+            }
+            //def-order dependences from declarations to the later definitions
+            for (AbstractVariable declaredVariable : srcNode.declaredVariables) {
+                for (PDGNode dstNode : definingNodes.getOrDefault(declaredVariable, Collections.emptySet())) {
+                    if (!dstNode.equals(srcNode))
+                        edges.add(new PDGDataDependence(srcNode, dstNode, declaredVariable, null));
+                }
+            }
+        }
+    }
+
+    private static Object getMayAliasKey(AbstractVariable variable) {
+        if (variable instanceof CompositeVariable)
+            return ((CompositeVariable) variable).getRightPart().toString();
+        return variable;
+    }
+
+    private void dataDependenceSearch(PDGNode initialNode, AbstractVariable variableInstruction, PDGNode startNode) {
+        getFlowSearch().search(startNode, (dstPDGNode, loop) -> {
             if (dstPDGNode.usesLocalVariable(variableInstruction)) {
                 PDGDataDependence dataDependence = new PDGDataDependence(initialNode, dstPDGNode, variableInstruction, loop);
                 edges.add(dataDependence);
             }
-            if (!dstPDGNode.definesLocalVariable(variableInstruction)) {
-                dataDependenceSearch(initialNode, variableInstruction, dstPDGNode, visitedNodes, loop);
-            } else if (initialNode.declaresLocalVariable(variableInstruction) && !initialNode.equals(dstPDGNode)) {
+            if (!dstPDGNode.definesLocalVariable(variableInstruction))
+                return true;
+            if (initialNode.declaresLocalVariable(variableInstruction) && !initialNode.equals(dstPDGNode)) {
                 //create def-order data dependence edge
                 PDGDataDependence dataDependence = new PDGDataDependence(initialNode, dstPDGNode, variableInstruction, loop);
                 edges.add(dataDependence);
             }
-        }
+            return false;
+        });
     }
 
-    private void antiDependenceSearch(PDGNode initialNode, AbstractVariable variableInstruction,
-                                      PDGNode currentNode, Set<PDGNode> visitedNodes, CFGBranchNode loop) {
-        if (visitedNodes.contains(currentNode))
-            return;
-        else
-            visitedNodes.add(currentNode);
-        CFGNode currentCFGNode = currentNode.getCFGNode();
-        for (GraphEdge edge : currentCFGNode.outgoingEdges) {
-            Flow flow = (Flow) edge;
-            CFGNode srcCFGNode = (CFGNode) flow.src;
-            CFGNode dstCFGNode = (CFGNode) flow.dst;
-            if (flow.isLoopbackFlow()) {
-                if (dstCFGNode instanceof CFGBranchLoopNode)
-                    loop = (CFGBranchLoopNode) dstCFGNode;
-                if (srcCFGNode instanceof CFGBranchDoLoopNode)
-                    loop = (CFGBranchDoLoopNode) srcCFGNode;
-            }
-            PDGNode dstPDGNode = dstCFGNode.getPDGNode();
+    private void antiDependenceSearch(PDGNode initialNode, AbstractVariable variableInstruction) {
+        getFlowSearch().search(initialNode, (dstPDGNode, loop) -> {
             if (dstPDGNode.definesLocalVariable(variableInstruction)) {
                 PDGAntiDependence antiDependence = new PDGAntiDependence(initialNode, dstPDGNode, variableInstruction, loop);
                 edges.add(antiDependence);
-            } else
-                antiDependenceSearch(initialNode, variableInstruction, dstPDGNode, visitedNodes, loop);
-        }
+                return false;
+            }
+            return true;
+        });
     }
 
-    private void outputDependenceSearch(PDGNode initialNode, AbstractVariable variableInstruction,
-                                        PDGNode currentNode, Set<PDGNode> visitedNodes, CFGBranchNode loop) {
-        if (visitedNodes.contains(currentNode))
-            return;
-        else
-            visitedNodes.add(currentNode);
-        CFGNode currentCFGNode = currentNode.getCFGNode();
-        for (GraphEdge edge : currentCFGNode.outgoingEdges) {
-            Flow flow = (Flow) edge;
-            CFGNode srcCFGNode = (CFGNode) flow.src;
-            CFGNode dstCFGNode = (CFGNode) flow.dst;
-            if (flow.isLoopbackFlow()) {
-                if (dstCFGNode instanceof CFGBranchLoopNode)
-                    loop = (CFGBranchLoopNode) dstCFGNode;
-                if (srcCFGNode instanceof CFGBranchDoLoopNode)
-                    loop = (CFGBranchDoLoopNode) srcCFGNode;
-            }
-            PDGNode dstPDGNode = dstCFGNode.getPDGNode();
+    private void outputDependenceSearch(PDGNode initialNode, AbstractVariable variableInstruction) {
+        getFlowSearch().search(initialNode, (dstPDGNode, loop) -> {
             if (dstPDGNode.definesLocalVariable(variableInstruction)) {
                 PDGOutputDependence outputDependence = new PDGOutputDependence(initialNode, dstPDGNode, variableInstruction, loop);
                 edges.add(outputDependence);
-            } else
-                outputDependenceSearch(initialNode, variableInstruction, dstPDGNode, visitedNodes, loop);
-        }
+                return false;
+            }
+            return true;
+        });
+    }
+
+    private PDGFlowSearch getFlowSearch() {
+        if (flowSearch == null)
+            flowSearch = new PDGFlowSearch(cfg);
+        return flowSearch;
     }
 
     private List<BasicBlock> getBasicBlocks() {
@@ -0,0 +1,143 @@
+package core.ast.decomposition.cfg;
+
+import java.util.Arrays;
+
+//Depth-first searches over the control flow of a method with explicit stacks instead of recursion,
+//so that long paths of statements do not overflow the thread stack.
+//The flows and the work arrays are indexed by node id, sized once per PDG and reused by every search
+class PDGFlowSearch {
+    private static final Flow[] NO_FLOWS = new Flow[0];
+    private final Flow[][] flows;
+    private final int[] visitMarks;
+    private int visitMark;
+    private final PDGNode[] stackNodes;
+    private final int[] stackFlowIndices;
+    private final CFGBranchNode[] stackLoops;
+    private final boolean[] stackVisitedFromLoopbackFlow;
+    private final ReachingAliasSet[] stackReachingAliasSets;
+
+    interface FlowVisitor {
+        //called for every flow leaving a visited node, with the loop of the last loopback flow on the path;
+        //returns whether the search continues from the destination of the flow
+        boolean visit(PDGNode dstNode, CFGBranchNode loop);
+    }
+
+    PDGFlowSearch(CFG cfg) {
+        //try blocks without resources have PDG nodes, but no flows
+        int maxId = 0;
+        for (GraphNode node : cfg.nodes) {
+            maxId = Math.max(maxId, node.getId());
+        }
+        for (CFGBlockNode blockNode : cfg.getDirectlyNestedNodesInBlocks().keySet()) {
+            maxId = Math.max(maxId, blockNode.getId());
+        }
+        this.flows = new Flow[maxId + 1][];
+        for (GraphNode node : cfg.nodes) {
+            Flow[] nodeFlows = new Flow[node.outgoingEdges.size()];
+            int i = 0;
+            for (GraphEdge edge : node.outgoingEdges) {
+                nodeFlows[i++] = (Flow) edge;
+            }
+            flows[node.getId()] = nodeFlows;
+        }
+        this.visitMarks = new int[maxId + 1];
+        //every node is pushed at most once per search
+        int stackSize = maxId + 1;
+        this.stackNodes = new PDGNode[stackSize];
+        this.stackFlowIndices = new int[stackSize];
+        this.stackLoops = new CFGBranchNode[stackSize];
+        this.stackVisitedFromLoopbackFlow = new boolean[stackSize];
+        this.stackReachingAliasSets = new ReachingAliasSet[stackSize];
+    }
+
+    //visits the flows in the same order as a recursive depth-first search from startNode
+    void search(PDGNode startNode, FlowVisitor visitor) {
+        startSearch();
+        int top = push(-1, startNode);
+        stackLoops[top] = null;
+        while (top >= 0) {
+            PDGNode currentNode = stackNodes[top];
+            Flow[] currentFlows = getFlows(currentNode);
+            if (stackFlowIndices[top] == currentFlows.length) {
+                stackNodes[top] = null;
+                stackLoops[top] = null;
+                top--;
+                continue;
+            }
+            Flow flow = currentFlows[stackFlowIndices[top]++];
+            CFGNode srcCFGNode = (CFGNode) flow.src;
+            CFGNode dstCFGNode = (CFGNode) flow.dst;
+            //the loop is kept by the following flows of the same node, as in the recursive search
+            if (flow.isLoopbackFlow()) {
+                if (dstCFGNode instanceof CFGBranchLoopNode)
+                    stackLoops[top] = (CFGBranchLoopNode) dstCFGNode;
+                if (srcCFGNode instanceof CFGBranchDoLoopNode)
+                    stackLoops[top] = (CFGBranchDoLoopNode) srcCFGNode;
+            }
+            CFGBranchNode loop = stackLoops[top];
+            PDGNode dstPDGNode = dstCFGNode.getPDGNode();
+            if (visitor.visit(dstPDGNode, loop) && !isVisited(dstPDGNode)) {
+                top = push(top, dstPDGNode);
+                stackLoops[top] = loop;
+            }
+        }
+    }
+
+    //visits every node at most once, so it is not interrupted by the budget halfway through the def and use updates
+    void searchAliases(PDGNode startNode, ReachingAliasSet reachingAliasSet) {
+        startSearch();
+        int top = push(-1, startNode);
+        stackVisitedFromLoopbackFlow[top] = false;
+        stackReachingAliasSets[top] = reachingAliasSet;
+        while (top >= 0) {
+            PDGNode currentNode = stackNodes[top];
+            Flow[] currentFlows = getFlows(currentNode);
+            if (stackFlowIndices[top] == currentFlows.length) {
+                stackNodes[top] = null;
+                stackReachingAliasSets[top] = null;
+                top--;
+                continue;
+            }
+            Flow flow = currentFlows[stackFlowIndices[top]++];
+            if (!stackVisitedFromLoopbackFlow[top] || flow.isFalseControlFlow()) {
+                CFGNode srcCFGNode = (CFGNode) flow.src;
+                CFGNode dstCFGNode = (CFGNode) flow.dst;
+                PDGNode dstPDGNode = dstCFGNode.getPDGNode();
+                ReachingAliasSet reachingAliasSetCopy = stackReachingAliasSets[top].copy();
+                dstPDGNode.applyReachingAliasSet(reachingAliasSetCopy);
+                dstPDGNode.updateReachingAliasSet(reachingAliasSetCopy);
+                if (!(srcCFGNode instanceof CFGBranchDoLoopNode && flow.isTrueControlFlow()) && !isVisited(dstPDGNode)) {
+                    top = push(top, dstPDGNode);
+                    stackVisitedFromLoopbackFlow[top] = flow.isLoopbackFlow();
+                    stackReachingAliasSets[top] = reachingAliasSetCopy;
+                }
+            }
+        }
+    }
+
+    private void startSearch() {
+        visitMark++;
+        if (visitMark == 0) {
+            //the marks wrapped around, so the marks of old searches could be taken for the current one
+            Arrays.fill(visitMarks, 0);
+            visitMark = 1;
+        }
+    }
+
+    private boolean isVisited(PDGNode node) {
+        return visitMarks[node.getId()] == visitMark;
+    }
+
+    private int push(int top, PDGNode node) {
+        visitMarks[node.getId()] = visitMark;
+        top++;
+        stackNodes[top] = node;
+        stackFlowIndices[top] = 0;
+        return top;
+    }
+
+    private Flow[] getFlows(PDGNode node) {
+        Flow[] nodeFlows = flows[node.getId()];
+        return nodeFlows != null ? nodeFlows : NO_FLOWS;
+    }
+}
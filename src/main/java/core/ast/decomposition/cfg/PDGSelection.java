@@ -2,57 +2,123 @@ package core.ast.decomposition.cfg;
 
 import com.intellij.psi.PsiElement;
 
-import java.util.LinkedHashSet;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class PDGSelection extends Graph {
     private PDG pdg;
+    private PDGStatementOffsetIndex offsetIndex;
+    //selected nodes occupy the ranks [firstRank, lastRank) of the offset index
+    private int firstRank;
+    private int lastRank;
+    //ranks within the range whose statements end after the selection
+    private BitSet excludedRanks;
+    private Map<PDGNode, Set<PDGNode>> backwardClosures = new ConcurrentHashMap<>();
+    private volatile Set<AbstractVariable> liveVariablesAfterSelection;
 
     public PDGSelection(PDG pdg, PsiElement first, PsiElement last) {
         this.pdg = pdg;
+        this.offsetIndex = pdg.getStatementOffsetIndex();
+        int startOffset = first.getTextRange().getStartOffset();
+        int endOffset = last.getTextRange().getEndOffset();
+        this.firstRank = offsetIndex.lowerBound(startOffset);
+        this.lastRank = Math.max(firstRank, offsetIndex.upperBound(endOffset));
+        this.excludedRanks = new BitSet();
+        for (int rank = firstRank; rank < lastRank; rank++) {
+            if (offsetIndex.getEndOffset(rank) > endOffset)
+                excludedRanks.set(rank);
+            else
+                this.nodes.add(offsetIndex.getNode(rank));
+        }
 
-        for (GraphNode node: pdg.nodes) {
-            PDGNode pdgNode = (PDGNode) node;
-            PsiElement element = pdgNode.getStatement().getStatement();
-            if (element.getTextRange().getStartOffset() >= first.getTextRange().getStartOffset() &&
-                    element.getTextRange().getEndOffset() <= last.getTextRange().getEndOffset()) {
-                this.nodes.add(pdgNode);
+        for (GraphNode node : nodes) {
+            pdg.resolveDataDependencies((PDGNode) node);
+            for (GraphEdge edge : node.outgoingEdges) {
+                PDGDependence dependence = (PDGDependence) edge;
+                if (containsDependence(dependence))
+                    edges.add(dependence);
             }
         }
+    }
 
-        for (GraphEdge edge : pdg.edges) {
-            PDGDependence dependence = (PDGDependence) edge;
-            if (nodes.contains(dependence.src) && nodes.contains(dependence.dst)) {
-                if (dependence instanceof PDGDataDependence) {
-                    PDGDataDependence dataDependence = (PDGDataDependence) dependence;
-                    if (dataDependence.isLoopCarried()) {
-                        PDGNode loopNode = dataDependence.getLoop().getPDGNode();
-                        if (nodes.contains(loopNode))
-                            edges.add(dataDependence);
-                    } else
-                        edges.add(dataDependence);
-                } else if (dependence instanceof PDGAntiDependence) {
-                    PDGAntiDependence antiDependence = (PDGAntiDependence) dependence;
-                    if (antiDependence.isLoopCarried()) {
-                        PDGNode loopNode = antiDependence.getLoop().getPDGNode();
-                        if (nodes.contains(loopNode))
-                            edges.add(antiDependence);
-                    } else
-                        edges.add(antiDependence);
-                } else if (dependence instanceof PDGOutputDependence) {
-                    PDGOutputDependence outputDependence = (PDGOutputDependence) dependence;
-                    if (outputDependence.isLoopCarried()) {
-                        PDGNode loopNode = outputDependence.getLoop().getPDGNode();
-                        if (nodes.contains(loopNode))
-                            edges.add(outputDependence);
-                    } else
-                        edges.add(outputDependence);
-                } else
-                    edges.add(dependence);
+    //a selection of the whole statements with the ranks [firstRank, lastRank), so that no rank is excluded
+    PDGSelection(PDG pdg, int firstRank, int lastRank) {
+        this.pdg = pdg;
+        this.offsetIndex = pdg.getStatementOffsetIndex();
+        this.firstRank = firstRank;
+        this.lastRank = firstRank;
+        this.excludedRanks = new BitSet();
+        setRange(firstRank, lastRank);
+    }
+
+    //moves a selection of whole statements to the ranks [firstRank, lastRank),
+    //adding and removing only the nodes of the ranks that enter or leave it along with their dependences
+    void setRange(int firstRank, int lastRank) {
+        if (firstRank >= this.lastRank || lastRank <= this.firstRank) {
+            for (int rank = this.firstRank; rank < this.lastRank; rank++) {
+                removeRank(rank);
+            }
+            this.firstRank = firstRank;
+            this.lastRank = firstRank;
+        }
+        while (this.firstRank < firstRank) {
+            removeRank(this.firstRank++);
+        }
+        while (this.lastRank > lastRank) {
+            removeRank(--this.lastRank);
+        }
+        while (this.firstRank > firstRank) {
+            addRank(--this.firstRank);
+        }
+        while (this.lastRank < lastRank) {
+            addRank(this.lastRank++);
+        }
+        backwardClosures.clear();
+        liveVariablesAfterSelection = null;
+    }
+
+    //the rank has to be adjacent to the selected ranks
+    private void addRank(int rank) {
+        PDGNode node = offsetIndex.getNode(rank);
+        nodes.add(node);
+        pdg.resolveDataDependencies(node);
+        for (GraphEdge edge : node.outgoingEdges) {
+            if (containsDependence((PDGDependence) edge))
+                edges.add(edge);
+        }
+        for (GraphEdge edge : node.incomingEdges) {
+            if (containsDependence((PDGDependence) edge))
+                edges.add(edge);
+        }
+        //the dependences carried by a loop become part of the selection together with the loop
+        if (node.getCFGNode() instanceof CFGBranchNode) {
+            for (GraphNode selectedNode : nodes) {
+                for (GraphEdge edge : selectedNode.outgoingEdges) {
+                    if (isCarriedBy((PDGDependence) edge, node) && containsDependence((PDGDependence) edge))
+                        edges.add(edge);
+                }
             }
         }
     }
 
+    //the rank has to be the first or the last selected rank
+    private void removeRank(int rank) {
+        PDGNode node = offsetIndex.getNode(rank);
+        nodes.remove(node);
+        edges.removeAll(node.outgoingEdges);
+        edges.removeAll(node.incomingEdges);
+        if (node.getCFGNode() instanceof CFGBranchNode)
+            edges.removeIf(edge -> isCarriedBy((PDGDependence) edge, node));
+    }
+
+    private static boolean isCarriedBy(PDGDependence dependence, PDGNode loopNode) {
+        if (dependence instanceof PDGAbstractDataDependence) {
+            PDGAbstractDataDependence dataDependence = (PDGAbstractDataDependence) dependence;
+            return dataDependence.isLoopCarried() && loopNode.equals(dataDependence.getLoop().getPDGNode());
+        }
+        return false;
+    }
+
     public boolean isAssigned(AbstractVariable variable) {
         for (GraphNode node : nodes) {
             PDGNode pdgNode = (PDGNode) node;
@@ -73,28 +139,42 @@ public class PDGSelection extends Graph {
     }
 
     public boolean isPartOf(GraphNode nodeCriterion) {
-        return nodes.contains(nodeCriterion);
+        int rank = offsetIndex.getRank(nodeCriterion);
+        return rank >= firstRank && rank < lastRank && !excludedRanks.get(rank);
+    }
+
+    //loop-carried dependences belong to the selection only if the loop node is selected as well
+    boolean containsDependence(PDGDependence dependence) {
+        if (!isPartOf(dependence.src) || !isPartOf(dependence.dst))
+            return false;
+        if (dependence instanceof PDGAbstractDataDependence) {
+            PDGAbstractDataDependence dataDependence = (PDGAbstractDataDependence) dependence;
+            if (dataDependence.isLoopCarried())
+                return isPartOf(dataDependence.getLoop().getPDGNode());
+        }
+        return true;
     }
 
     Set<PDGNode> computeSlice(PDGNode nodeCriterion, AbstractVariable localVariableCriterion) {
         Set<PDGNode> sliceNodes = new LinkedHashSet<>();
         if (nodeCriterion.definesLocalVariable(localVariableCriterion)) {
-            sliceNodes.addAll(traverseBackward(nodeCriterion, new LinkedHashSet<>()));
+            sliceNodes.addAll(computeSlice(nodeCriterion));
         } else if (nodeCriterion.usesLocalVariable(localVariableCriterion)) {
             Set<PDGNode> defNodes = getDefNodes(nodeCriterion, localVariableCriterion);
             for (PDGNode defNode : defNodes) {
-                sliceNodes.addAll(traverseBackward(defNode, new LinkedHashSet<>()));
+                sliceNodes.addAll(computeSlice(defNode));
             }
-            sliceNodes.addAll(traverseBackward(nodeCriterion, new LinkedHashSet<>()));
+            sliceNodes.addAll(computeSlice(nodeCriterion));
         }
         return sliceNodes;
     }
 
     private Set<PDGNode> getDefNodes(PDGNode node, AbstractVariable localVariable) {
         Set<PDGNode> defNodes = new LinkedHashSet<>();
+        pdg.resolveDataDependencies(node);
         for (GraphEdge edge : node.incomingEdges) {
             PDGDependence dependence = (PDGDependence) edge;
-            if (edges.contains(dependence) && dependence instanceof PDGDataDependence) {
+            if (dependence instanceof PDGDataDependence && containsDependence(dependence)) {
                 PDGDataDependence dataDependence = (PDGDataDependence) dependence;
                 if (dataDependence.getData().equals(localVariable)) {
                     PDGNode srcPDGNode = (PDGNode) dependence.src;
@@ -105,21 +185,129 @@ public class PDGSelection extends Graph {
         return defNodes;
     }
 
+    //the backward closure of a node depends only on the selection, so it is computed once for all the slices of the selection
     Set<PDGNode> computeSlice(PDGNode nodeCriterion) {
-        return new LinkedHashSet<>(traverseBackward(nodeCriterion, new LinkedHashSet<>()));
+        return backwardClosures.computeIfAbsent(nodeCriterion,
+                node -> Collections.unmodifiableSet(traverseBackward(node, new LinkedHashSet<>())));
+    }
+
+    //whether the variable may be read after the selection before it is assigned again
+    public boolean isLiveAfterSelection(AbstractVariable variable) {
+        if (liveVariablesAfterSelection == null)
+            liveVariablesAfterSelection = computeLiveVariablesAfterSelection();
+        return liveVariablesAfterSelection.contains(variable);
+    }
+
+    //backward liveness over the control flow of the method, restricted to the plain variables assigned in the selection.
+    //A use of an attribute or a method of a reference counts as a use of the reference
+    private Set<AbstractVariable> computeLiveVariablesAfterSelection() {
+        List<AbstractVariable> variables = new ArrayList<>();
+        Map<AbstractVariable, Integer> variableIndices = new HashMap<>();
+        for (GraphNode node : nodes) {
+            for (AbstractVariable definedVariable : ((PDGNode) node).definedVariables) {
+                if (definedVariable instanceof PlainVariable && !variableIndices.containsKey(definedVariable)) {
+                    variableIndices.put(definedVariable, variables.size());
+                    variables.add(definedVariable);
+                }
+            }
+        }
+        if (variables.isEmpty())
+            return Collections.emptySet();
+        List<PDGNode> methodNodes = new ArrayList<>();
+        int maxId = 0;
+        for (GraphNode node : pdg.nodes) {
+            methodNodes.add((PDGNode) node);
+            maxId = Math.max(maxId, node.getId());
+        }
+        BitSet[] usedVariables = new BitSet[maxId + 1];
+        BitSet[] definedVariables = new BitSet[maxId + 1];
+        BitSet[] liveVariables = new BitSet[maxId + 1];
+        for (PDGNode node : methodNodes) {
+            BitSet used = new BitSet();
+            for (AbstractVariable usedVariable : node.usedVariables) {
+                Integer index = variableIndices.get(usedVariable.getInitialVariable());
+                if (index != null)
+                    used.set(index);
+            }
+            BitSet defined = new BitSet();
+            for (AbstractVariable definedVariable : node.definedVariables) {
+                Integer index = variableIndices.get(definedVariable);
+                if (index != null && definedVariable instanceof PlainVariable)
+                    defined.set(index);
+            }
+            usedVariables[node.getId()] = used;
+            definedVariables[node.getId()] = defined;
+            liveVariables[node.getId()] = new BitSet();
+        }
+        //later statements first, so that most nodes are final after their first visit
+        Deque<PDGNode> worklist = new ArrayDeque<>();
+        boolean[] inWorklist = new boolean[maxId + 1];
+        for (int i = methodNodes.size() - 1; i >= 0; i--) {
+            worklist.add(methodNodes.get(i));
+            inWorklist[methodNodes.get(i).getId()] = true;
+        }
+        while (!worklist.isEmpty()) {
+            PDGNode node = worklist.poll();
+            inWorklist[node.getId()] = false;
+            BitSet live = new BitSet();
+            for (GraphEdge edge : node.getCFGNode().outgoingEdges) {
+                BitSet successorLive = liveVariables[edge.dst.getId()];
+                if (successorLive != null)
+                    live.or(successorLive);
+            }
+            live.andNot(definedVariables[node.getId()]);
+            live.or(usedVariables[node.getId()]);
+            if (!live.equals(liveVariables[node.getId()])) {
+                liveVariables[node.getId()] = live;
+                for (GraphEdge edge : node.getCFGNode().incomingEdges) {
+                    PDGNode predecessor = ((CFGNode) edge.src).getPDGNode();
+                    if (predecessor != null && !inWorklist[predecessor.getId()]) {
+                        inWorklist[predecessor.getId()] = true;
+                        worklist.add(predecessor);
+                    }
+                }
+            }
+        }
+        //the variables live at the statements control leaves the selection to
+        BitSet liveAfterSelection = new BitSet();
+        for (GraphNode node : nodes) {
+            for (GraphEdge edge : ((PDGNode) node).getCFGNode().outgoingEdges) {
+                PDGNode successor = ((CFGNode) edge.dst).getPDGNode();
+                if (successor != null && !isPartOf(successor))
+                    liveAfterSelection.or(liveVariables[successor.getId()]);
+            }
+        }
+        Set<AbstractVariable> liveVariablesAfterSelection = new HashSet<>();
+        for (int index = liveAfterSelection.nextSetBit(0); index >= 0; index = liveAfterSelection.nextSetBit(index + 1)) {
+            liveVariablesAfterSelection.add(variables.get(index));
+        }
+        return liveVariablesAfterSelection;
     }
 
+    //the nodes reached backwards over the dependences followed by slicing, in depth-first preorder
     private Set<PDGNode> traverseBackward(PDGNode node, Set<PDGNode> visitedNodes) {
         Set<PDGNode> sliceNodes = new LinkedHashSet<>();
+        Deque<Iterator<GraphEdge>> stack = new ArrayDeque<>();
         sliceNodes.add(node);
         visitedNodes.add(node);
-        for (GraphEdge edge : node.incomingEdges) {
-            PDGDependence dependence = (PDGDependence) edge;
-            if (edges.contains(dependence) && !(dependence instanceof PDGAntiDependence)
-                    && !(dependence instanceof PDGOutputDependence)) {
+        pdg.resolveDataDependencies(node);
+        stack.push(node.incomingEdges.iterator());
+        while (!stack.isEmpty()) {
+            Iterator<GraphEdge> incomingEdges = stack.peek();
+            if (!incomingEdges.hasNext()) {
+                stack.pop();
+                continue;
+            }
+            PDGDependence dependence = (PDGDependence) incomingEdges.next();
+            if (!(dependence instanceof PDGAntiDependence) && !(dependence instanceof PDGOutputDependence)
+                    && containsDependence(dependence)) {
                 PDGNode srcPDGNode = (PDGNode) dependence.src;
-                if (!visitedNodes.contains(srcPDGNode))
-                    sliceNodes.addAll(traverseBackward(srcPDGNode, visitedNodes));
+                if (visitedNodes.add(srcPDGNode)) {
+                    sliceNodes.add(srcPDGNode);
+                    //the iterators on the stack stay valid, since the dependences of their nodes are complete
+                    pdg.resolveDataDependencies(srcPDGNode);
+                    stack.push(srcPDGNode.incomingEdges.iterator());
+                }
             }
         }
         return sliceNodes;
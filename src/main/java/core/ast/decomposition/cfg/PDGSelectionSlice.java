@@ -1,9 +1,6 @@
 package core.ast.decomposition.cfg;
 
-import java.util.LinkedHashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.*;
 
 public class PDGSelectionSlice {
     protected PDG pdg;
@@ -16,11 +13,17 @@ public class PDGSelectionSlice {
     protected Set<PDGNode> removableNodes;
 
     public PDGSelectionSlice(PDGSelection selection, AbstractVariable baseVariable) {
+        this(selection, baseVariable, AnalysisBudget.UNLIMITED);
+    }
+
+    //throws AnalysisBudgetExceededException rather than returning an incomplete slice
+    public PDGSelectionSlice(PDGSelection selection, AbstractVariable baseVariable, AnalysisBudget budget) {
         pdg = selection.getPdg();
         this.selection = selection;
         sliceNodes = new TreeSet<>();
         nodeCriteria = selection.getAssignmentNodesOfVariableCriterion(baseVariable);
         for (PDGNode nodeCriterion : nodeCriteria) {
+            budget.checkTime();
             sliceNodes.addAll(selection.computeSlice(nodeCriterion));
         }
         this.baseVariable = baseVariable;
@@ -34,6 +37,7 @@ public class PDGSelectionSlice {
                     PlainVariable plainVariable = (PlainVariable) usedVariable;
                     if (!alreadyExaminedObjectReferences.contains(plainVariable)
                             && !baseVariable.getInitialVariable().equals(plainVariable)) {
+                        budget.checkTime();
                         Map<CompositeVariable, LinkedHashSet<PDGNode>> definedAttributeNodeCriteriaMap =
                                 pdg.getDefinedAttributesOfReference(plainVariable);
                         if (!definedAttributeNodeCriteriaMap.isEmpty()) {
@@ -56,118 +60,118 @@ public class PDGSelectionSlice {
         Set<PDGNode> throwStatementNodes = getThrowStatementNodesWithinRegion();
         Set<PDGNode> nodesToBeAddedToSliceDueToThrowStatementNodes = new TreeSet<>();
         for (PDGNode throwNode : throwStatementNodes) {
-            for (PDGNode sliceNode : sliceNodes) {
-                if (sliceNode instanceof PDGControlPredicateNode && isNestedInside(throwNode, sliceNode)) {
-                    Set<PDGNode> throwNodeSlice = selection.computeSlice(throwNode);
-                    nodesToBeAddedToSliceDueToThrowStatementNodes.addAll(throwNodeSlice);
-                    break;
-                }
+            if (isNestedInsideControlPredicate(throwNode, sliceNodes)) {
+                Set<PDGNode> throwNodeSlice = selection.computeSlice(throwNode);
+                nodesToBeAddedToSliceDueToThrowStatementNodes.addAll(throwNodeSlice);
             }
         }
         sliceNodes.addAll(nodesToBeAddedToSliceDueToThrowStatementNodes);
-        Set<PDGNode> remainingNodes = new TreeSet<>();
-        remainingNodes.add(pdg.getEntryNode());
-        for (GraphNode node : pdg.nodes) {
-            PDGNode pdgNode = (PDGNode) node;
-            if (!sliceNodes.contains(pdgNode))
-                remainingNodes.add(pdgNode);
-        }
+        //the node sets are bitsets over the node ids from here on
+        BitSet methodNodes = getIds(pdg.nodes);
+        BitSet sliceNodeIds = getIds(sliceNodes);
+        BitSet remainingNodes = (BitSet) methodNodes.clone();
+        remainingNodes.andNot(sliceNodeIds);
+        remainingNodes.set(pdg.getEntryNode().getId());
         Set<PDGNode> throwStatementNodesToBeAddedToDuplicatedNodesDueToRemainingNodes = new TreeSet<>();
         for (PDGNode throwNode : throwStatementNodes) {
-            for (PDGNode remainingNode : remainingNodes) {
-                if (remainingNode.getId() != 0 && isNestedInside(throwNode, remainingNode)) {
-                    throwStatementNodesToBeAddedToDuplicatedNodesDueToRemainingNodes.add(throwNode);
-                    break;
-                }
-            }
+            if (isNestedInside(throwNode, remainingNodes))
+                throwStatementNodesToBeAddedToDuplicatedNodesDueToRemainingNodes.add(throwNode);
         }
         this.passedParameters = new LinkedHashSet<>();
         Set<PDGNode> nCD = new LinkedHashSet<>();
         Set<PDGNode> nDD = new LinkedHashSet<>();
         for (GraphEdge edge : pdg.edges) {
             PDGDependence dependence = (PDGDependence) edge;
-            PDGNode srcPDGNode = (PDGNode) dependence.src;
-            PDGNode dstPDGNode = (PDGNode) dependence.dst;
+            int srcId = dependence.src.getId();
+            int dstId = dependence.dst.getId();
             if (dependence instanceof PDGDataDependence) {
                 PDGDataDependence dataDependence = (PDGDataDependence) dependence;
-                if (remainingNodes.contains(srcPDGNode) && sliceNodes.contains(dstPDGNode))
+                if (remainingNodes.get(srcId) && sliceNodeIds.get(dstId))
                     passedParameters.add(dataDependence.getData());
-                if (sliceNodes.contains(srcPDGNode) && remainingNodes.contains(dstPDGNode)
+                if (sliceNodeIds.get(srcId) && remainingNodes.get(dstId)
                         && !dataDependence.getData().equals(baseVariable)
                         && !dataDependence.getData().isField())
-                    nDD.add(srcPDGNode);
+                    nDD.add((PDGNode) dependence.src);
             } else if (dependence instanceof PDGControlDependence) {
-                if (sliceNodes.contains(srcPDGNode) && remainingNodes.contains(dstPDGNode))
-                    nCD.add(srcPDGNode);
+                if (sliceNodeIds.get(srcId) && remainingNodes.get(dstId))
+                    nCD.add((PDGNode) dependence.src);
             }
         }
-        Set<PDGNode> controlIndispensableNodes = new LinkedHashSet<>();
+        BitSet controlIndispensableNodes = new BitSet();
         for (PDGNode p : nCD) {
+            budget.checkTime();
             for (AbstractVariable usedVariable : p.usedVariables) {
-                Set<PDGNode> pSliceNodes = selection.computeSlice(p, usedVariable);
-                for (GraphNode node : pdg.nodes) {
-                    PDGNode q = (PDGNode) node;
-                    if (pSliceNodes.contains(q) || q.equals(p))
-                        controlIndispensableNodes.add(q);
-                }
+                controlIndispensableNodes.or(getIds(selection.computeSlice(p, usedVariable)));
+                controlIndispensableNodes.set(p.getId());
             }
             if (p.usedVariables.isEmpty()) {
-                Set<PDGNode> pSliceNodes = selection.computeSlice(p);
-                for (GraphNode node : pdg.nodes) {
-                    PDGNode q = (PDGNode) node;
-                    if (pSliceNodes.contains(q) || q.equals(p))
-                        controlIndispensableNodes.add(q);
-                }
+                controlIndispensableNodes.or(getIds(selection.computeSlice(p)));
+                controlIndispensableNodes.set(p.getId());
             }
         }
-        Set<PDGNode> dataIndispensableNodes = new LinkedHashSet<>();
+        BitSet dataIndispensableNodes = new BitSet();
         for (PDGNode p : nDD) {
+            budget.checkTime();
             for (AbstractVariable definedVariable : p.definedVariables) {
-                Set<PDGNode> pSliceNodes = selection.computeSlice(p, definedVariable);
-                for (GraphNode node : pdg.nodes) {
-                    PDGNode q = (PDGNode) node;
-                    if (pSliceNodes.contains(q))
-                        dataIndispensableNodes.add(q);
-                }
+                dataIndispensableNodes.or(getIds(selection.computeSlice(p, definedVariable)));
             }
         }
-        this.indispensableNodes = new TreeSet<>();
-        indispensableNodes.addAll(controlIndispensableNodes);
-        indispensableNodes.addAll(dataIndispensableNodes);
+        BitSet indispensableNodeIds = new BitSet();
+        indispensableNodeIds.or(controlIndispensableNodes);
+        indispensableNodeIds.or(dataIndispensableNodes);
+        indispensableNodeIds.and(methodNodes);
         Set<PDGNode> throwStatementNodesToBeAddedToDuplicatedNodesDueToIndispensableNodes = new TreeSet<>();
         for (PDGNode throwNode : throwStatementNodes) {
-            for (PDGNode indispensableNode : indispensableNodes) {
-                if (isNestedInside(throwNode, indispensableNode)) {
-                    throwStatementNodesToBeAddedToDuplicatedNodesDueToIndispensableNodes.add(throwNode);
-                    break;
-                }
-            }
+            if (isNestedInside(throwNode, indispensableNodeIds))
+                throwStatementNodesToBeAddedToDuplicatedNodesDueToIndispensableNodes.add(throwNode);
         }
         for (PDGNode throwNode : throwStatementNodesToBeAddedToDuplicatedNodesDueToRemainingNodes) {
-            indispensableNodes.addAll(selection.computeSlice(throwNode));
+            indispensableNodeIds.or(getIds(selection.computeSlice(throwNode)));
         }
         for (PDGNode throwNode : throwStatementNodesToBeAddedToDuplicatedNodesDueToIndispensableNodes) {
-            indispensableNodes.addAll(selection.computeSlice(throwNode));
+            indispensableNodeIds.or(getIds(selection.computeSlice(throwNode)));
         }
+        BitSet removableNodeIds = (BitSet) methodNodes.clone();
+        removableNodeIds.andNot(remainingNodes);
+        removableNodeIds.andNot(indispensableNodeIds);
+        this.indispensableNodes = new TreeSet<>();
         this.removableNodes = new LinkedHashSet<>();
+        if (indispensableNodeIds.get(pdg.getEntryNode().getId()))
+            indispensableNodes.add(pdg.getEntryNode());
         for (GraphNode node : pdg.nodes) {
             PDGNode pdgNode = (PDGNode) node;
-            if (!remainingNodes.contains(pdgNode) && !indispensableNodes.contains(pdgNode))
+            if (indispensableNodeIds.get(pdgNode.getId()))
+                indispensableNodes.add(pdgNode);
+            if (removableNodeIds.get(pdgNode.getId()))
                 removableNodes.add(pdgNode);
         }
     }
 
-    private boolean isNestedInside(PDGNode nestedNode, PDGNode parentNode) {
-        for (GraphEdge edge : nestedNode.incomingEdges) {
-            PDGDependence dependence = (PDGDependence) edge;
-            if (dependence instanceof PDGControlDependence) {
-                PDGControlDependence controlDependence = (PDGControlDependence) dependence;
-                PDGNode srcPDGNode = (PDGNode) controlDependence.src;
-                if (srcPDGNode.equals(parentNode))
-                    return true;
-                else
-                    return isNestedInside(srcPDGNode, parentNode);
-            }
+    private static BitSet getIds(Collection<? extends GraphNode> nodes) {
+        BitSet ids = new BitSet();
+        for (GraphNode node : nodes) {
+            ids.set(node.getId());
+        }
+        return ids;
+    }
+
+    //whether a control parent of the node other than the method entry is among the given nodes
+    private static boolean isNestedInside(PDGNode nestedNode, BitSet parentNodes) {
+        PDGNode controlParent = nestedNode.getControlDependenceParent();
+        while (controlParent != null) {
+            if (controlParent.getId() != 0 && parentNodes.get(controlParent.getId()))
+                return true;
+            controlParent = controlParent.getControlDependenceParent();
+        }
+        return false;
+    }
+
+    private static boolean isNestedInsideControlPredicate(PDGNode nestedNode, Set<PDGNode> parentNodes) {
+        PDGNode controlParent = nestedNode.getControlDependenceParent();
+        while (controlParent != null) {
+            if (controlParent instanceof PDGControlPredicateNode && parentNodes.contains(controlParent))
+                return true;
+            controlParent = controlParent.getControlDependenceParent();
         }
         return false;
     }
@@ -232,6 +236,10 @@ public class PDGSelectionSlice {
     }
 
     boolean isNotTrivial() {
+        return isNotTrivial(sliceNodes, baseVariable);
+    }
+
+    private static boolean isNotTrivial(Set<PDGNode> sliceNodes, AbstractVariable baseVariable) {
         if (sliceNodes.size() <= 1)
             return false;
         if (sliceNodes.size() == 2) {
@@ -240,6 +248,32 @@ public class PDGSelectionSlice {
         return true;
     }
 
+    //whether the slice of the variable can be valid, judged from the memoised backward slices of its assignments alone.
+    //The object-state and throw statement slices only add nodes, so a slice that cannot grow is decided exactly
+    public static boolean mayBeValid(PDGSelection selection, AbstractVariable baseVariable, AnalysisBudget budget) {
+        Set<PDGNode> sliceNodes = new TreeSet<>();
+        for (PDGNode nodeCriterion : selection.getAssignmentNodesOfVariableCriterion(baseVariable)) {
+            budget.checkTime();
+            sliceNodes.addAll(selection.computeSlice(nodeCriterion));
+        }
+        if (sliceNodes.size() > 2)
+            return true;
+        for (GraphNode node : selection.nodes) {
+            if (((PDGNode) node).getCFGNode() instanceof CFGThrowNode)
+                return true;
+        }
+        PDG pdg = selection.getPdg();
+        for (PDGNode sliceNode : sliceNodes) {
+            budget.checkTime();
+            for (AbstractVariable usedVariable : sliceNode.usedVariables) {
+                if (usedVariable instanceof PlainVariable && !baseVariable.getInitialVariable().equals(usedVariable)
+                        && !pdg.getDefinedAttributesOfReference((PlainVariable) usedVariable).isEmpty())
+                    return true;
+            }
+        }
+        return isNotTrivial(sliceNodes, baseVariable);
+    }
+
     // Checks whether current slice is valid, useful and "optimal"
     public boolean isValid() {
         return isNotTrivial();
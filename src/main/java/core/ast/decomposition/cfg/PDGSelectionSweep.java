@@ -0,0 +1,70 @@
+package core.ast.decomposition.cfg;
+
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiStatement;
+import utils.AnalysisMetrics;
+import utils.AnalysisMetrics.Phase;
+import utils.AnalysisMetrics.PhaseMeasurement;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+//Visits every contiguous range of sibling statements of a method as a selection of its PDG.
+//The ranges of a block are visited in a serpentine order, so that each one differs from the previous one
+//by a statement at one of its ends and the selection is updated instead of built again
+public class PDGSelectionSweep {
+    private final PDG pdg;
+    private final PDGStatementOffsetIndex offsetIndex;
+
+    public PDGSelectionSweep(PDG pdg) {
+        this.pdg = pdg;
+        this.offsetIndex = pdg.getStatementOffsetIndex();
+    }
+
+    //the visitor returns whether the sweep continues
+    public void sweep(Predicate<PDGSelection> visitor) {
+        for (List<Integer> siblingRanks : getSiblingRanks()) {
+            int size = siblingRanks.size();
+            int[] startRanks = new int[size];
+            int[] endRanks = new int[size];
+            for (int i = 0; i < size; i++) {
+                int rank = siblingRanks.get(i);
+                startRanks[i] = rank;
+                //the statements nested in a sibling start before it ends
+                endRanks[i] = offsetIndex.lowerBound(offsetIndex.getEndOffset(rank));
+            }
+            PDGSelection selection = new PDGSelection(pdg, startRanks[0], startRanks[0]);
+            for (int first = 0; first < size; first++) {
+                if (first % 2 == 0) {
+                    for (int last = first; last < size; last++) {
+                        if (!visit(selection, startRanks[first], endRanks[last], visitor))
+                            return;
+                    }
+                } else {
+                    for (int last = size - 1; last >= first; last--) {
+                        if (!visit(selection, startRanks[first], endRanks[last], visitor))
+                            return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean visit(PDGSelection selection, int firstRank, int lastRank, Predicate<PDGSelection> visitor) {
+        try (PhaseMeasurement ignored = AnalysisMetrics.measure(Phase.SELECTION)) {
+            selection.setRange(firstRank, lastRank);
+        }
+        return visitor.test(selection);
+    }
+
+    //the ranks of the statements of every block, grouped by their parent and in the order of the text
+    private Collection<List<Integer>> getSiblingRanks() {
+        Map<PsiElement, List<Integer>> siblingRanks = new LinkedHashMap<>();
+        for (int rank = 0; rank < offsetIndex.size(); rank++) {
+            PsiStatement statement = offsetIndex.getNode(rank).getASTStatement();
+            if (statement != null && statement.getParent() != null)
+                siblingRanks.computeIfAbsent(statement.getParent(), parent -> new ArrayList<>()).add(rank);
+        }
+        return siblingRanks.values();
+    }
+}
@@ -0,0 +1,377 @@
+package core.ast.decomposition.cfg;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.*;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.psi.util.PsiTreeUtil;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+//Compact binary form of the computed part of a PDG: the def/use sets of its nodes as bitsets over a variable table,
+//its dependence edges and the loops targeted by its jumps. Nodes are referred to by the rank of their statement offsets,
+//so that a snapshot can be laid over the nodes of a PDG rebuilt from the same source text
+public class PDGSnapshot {
+    private static final int MAGIC = 0x50444753;
+    private static final int VERSION = 2;
+    //distinct from every rank and from the -1 of a node missing from the index
+    private static final int ENTRY_NODE = Integer.MIN_VALUE;
+    private static final int NO_NODE = -2;
+    private static final byte DECLARED_IN_FILE = 0;
+    private static final byte DECLARED_IN_CLASS = 1;
+
+    private final ByteBuffer buffer;
+
+    private PDGSnapshot(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    //returns null if the PDG refers to variables that could not be found again from their declarations,
+    //or to nodes missing from its statement index.
+    //A restored PDG has all its dependences, so the deferred ones are created before writing,
+    //which is why only a PDG that no other thread reads yet may be written
+    public static byte[] write(PDG pdg, String key) {
+        pdg.resolveAllDataDependencies();
+        pdg.createAntiAndOutputDependencies();
+        PDGStatementOffsetIndex index = pdg.getStatementOffsetIndex();
+        List<PDGNode> nodes = new ArrayList<>();
+        nodes.add(pdg.getEntryNode());
+        for (int rank = 0; rank < index.size(); rank++) {
+            nodes.add(index.getNode(rank));
+        }
+        Map<AbstractVariable, Integer> variables = new LinkedHashMap<>();
+        for (PDGNode node : nodes) {
+            addVariables(variables, node.definedVariables);
+            addVariables(variables, node.usedVariables);
+        }
+        for (GraphEdge edge : pdg.edges) {
+            if (edge instanceof PDGAbstractDataDependence)
+                addVariables(variables, Collections.singleton(((PDGAbstractDataDependence) edge).getData()));
+        }
+        for (AbstractVariable variable : variables.keySet()) {
+            if (!isLocatable(variable, pdg.getPsiFile()))
+                return null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeString(out, key);
+            out.writeInt(index.size());
+            for (int rank = 0; rank < index.size(); rank++) {
+                out.writeInt(index.getStartOffset(rank));
+                out.writeInt(index.getEndOffset(rank));
+            }
+            out.writeInt(variables.size());
+            for (AbstractVariable variable : variables.keySet()) {
+                writeVariable(out, variable, pdg.getPsiFile());
+            }
+            for (PDGNode node : nodes) {
+                writeVariableSet(out, node.definedVariables, variables);
+                writeVariableSet(out, node.usedVariables, variables);
+            }
+            out.writeInt(pdg.edges.size());
+            for (GraphEdge edge : pdg.edges) {
+                PDGDependence dependence = (PDGDependence) edge;
+                out.writeByte(dependence.getType().ordinal());
+                out.writeInt(getRank(index, dependence.getSrc()));
+                out.writeInt(getRank(index, dependence.getDst()));
+                if (dependence instanceof PDGControlDependence) {
+                    out.writeBoolean(((PDGControlDependence) dependence).isTrueControlDependence());
+                } else {
+                    PDGAbstractDataDependence dataDependence = (PDGAbstractDataDependence) dependence;
+                    out.writeInt(variables.get(dataDependence.getData()));
+                    out.writeInt(dataDependence.isLoopCarried() ?
+                            getRank(index, dataDependence.getLoop().getPDGNode()) : NO_NODE);
+                }
+            }
+            Map<Integer, Integer> jumps = new LinkedHashMap<>();
+            for (int rank = 0; rank < index.size(); rank++) {
+                CFGNode innerMostLoopNode = getInnerMostLoopNode(index.getNode(rank).getCFGNode());
+                if (innerMostLoopNode != null)
+                    jumps.put(rank, getRank(index, innerMostLoopNode.getPDGNode()));
+            }
+            out.writeInt(jumps.size());
+            for (Map.Entry<Integer, Integer> jump : jumps.entrySet()) {
+                out.writeInt(jump.getKey());
+                out.writeInt(jump.getValue());
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (UnknownNodeException e) {
+            return null;
+        } catch (IOException e) {
+            //not thrown by an in-memory stream
+            throw new IllegalStateException(e);
+        }
+    }
+
+    //returns null if the buffer does not hold a snapshot of this version taken under the same key
+    public static PDGSnapshot read(ByteBuffer buffer, String key) {
+        ByteBuffer data = buffer.duplicate();
+        try {
+            if (data.getInt() != MAGIC || data.getInt() != VERSION || !key.equals(readString(data)))
+                return null;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return null;
+        }
+        return new PDGSnapshot(data.slice());
+    }
+
+    //lays the snapshot over a PDG whose nodes and control dependences from the AST are built;
+    //leaves the PDG untouched and returns false if the snapshot does not match its statements or variables
+    boolean restore(PDG pdg) {
+        try {
+            return restore(pdg, buffer.duplicate());
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean restore(PDG pdg, ByteBuffer data) {
+        PDGStatementOffsetIndex index = pdg.getStatementOffsetIndex();
+        if (data.getInt() != index.size())
+            return false;
+        for (int rank = 0; rank < index.size(); rank++) {
+            if (data.getInt() != index.getStartOffset(rank) || data.getInt() != index.getEndOffset(rank))
+                return false;
+        }
+        AbstractVariable[] variables = new AbstractVariable[readCount(data)];
+        for (int i = 0; i < variables.length; i++) {
+            variables[i] = readVariable(data, pdg.getPsiFile());
+            if (variables[i] == null)
+                return false;
+        }
+        List<PDGNode> nodes = new ArrayList<>();
+        nodes.add(pdg.getEntryNode());
+        for (int rank = 0; rank < index.size(); rank++) {
+            nodes.add(index.getNode(rank));
+        }
+        List<Set<AbstractVariable>> definedVariables = new ArrayList<>();
+        List<Set<AbstractVariable>> usedVariables = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            definedVariables.add(readVariableSet(data, variables));
+            usedVariables.add(readVariableSet(data, variables));
+        }
+        int[][] edges = new int[readCount(data)][];
+        for (int i = 0; i < edges.length; i++) {
+            PDGDependenceType type = PDGDependenceType.values()[data.get()];
+            int src = readRank(data, index);
+            int dst = readRank(data, index);
+            if (type == PDGDependenceType.CONTROL) {
+                edges[i] = new int[]{type.ordinal(), src, dst, data.get()};
+            } else {
+                int variable = data.getInt();
+                int loop = data.getInt();
+                if (variable < 0 || variable >= variables.length)
+                    return false;
+                if (loop != NO_NODE && !(getNode(index, pdg, loop).getCFGNode() instanceof CFGBranchNode))
+                    return false;
+                edges[i] = new int[]{type.ordinal(), src, dst, variable, loop};
+            }
+        }
+        int[][] jumps = new int[readCount(data)][];
+        for (int i = 0; i < jumps.length; i++) {
+            int jump = readRank(data, index);
+            int loop = readRank(data, index);
+            CFGNode jumpCFGNode = getNode(index, pdg, jump).getCFGNode();
+            if (!(jumpCFGNode instanceof CFGBreakNode || jumpCFGNode instanceof CFGContinueNode))
+                return false;
+            jumps[i] = new int[]{jump, loop};
+        }
+
+        //the snapshot matches, so the PDG can be modified from here on
+        pdg.edges.clear();
+        for (int i = 0; i < nodes.size(); i++) {
+            PDGNode node = nodes.get(i);
+            node.incomingEdges.clear();
+            node.outgoingEdges.clear();
+            node.definedVariables.clear();
+            node.definedVariables.addAll(definedVariables.get(i));
+            node.usedVariables.clear();
+            node.usedVariables.addAll(usedVariables.get(i));
+        }
+        for (int[] edge : edges) {
+            PDGDependenceType type = PDGDependenceType.values()[edge[0]];
+            PDGNode src = getNode(index, pdg, edge[1]);
+            PDGNode dst = getNode(index, pdg, edge[2]);
+            if (type == PDGDependenceType.CONTROL) {
+                pdg.edges.add(new PDGControlDependence(src, dst, edge[3] != 0));
+            } else {
+                AbstractVariable variable = variables[edge[3]];
+                CFGBranchNode loop = edge[4] == NO_NODE ? null : (CFGBranchNode) getNode(index, pdg, edge[4]).getCFGNode();
+                if (type == PDGDependenceType.DATA)
+                    pdg.edges.add(new PDGDataDependence(src, dst, variable, loop));
+                else if (type == PDGDependenceType.ANTI)
+                    pdg.edges.add(new PDGAntiDependence(src, dst, variable, loop));
+                else
+                    pdg.edges.add(new PDGOutputDependence(src, dst, variable, loop));
+            }
+        }
+        for (int[] jump : jumps) {
+            CFGNode jumpCFGNode = getNode(index, pdg, jump[0]).getCFGNode();
+            CFGNode loopCFGNode = getNode(index, pdg, jump[1]).getCFGNode();
+            if (jumpCFGNode instanceof CFGBreakNode)
+                ((CFGBreakNode) jumpCFGNode).setInnerMostLoopNode(loopCFGNode);
+            else
+                ((CFGContinueNode) jumpCFGNode).setInnerMostLoopNode(loopCFGNode);
+        }
+        return true;
+    }
+
+    private static int getRank(PDGStatementOffsetIndex index, GraphNode node) {
+        if (node instanceof PDGMethodEntryNode)
+            return ENTRY_NODE;
+        int rank = index.getRank(node);
+        if (rank < 0)
+            throw new UnknownNodeException();
+        return rank;
+    }
+
+    private static int readRank(ByteBuffer data, PDGStatementOffsetIndex index) {
+        int rank = data.getInt();
+        if (rank != ENTRY_NODE && (rank < 0 || rank >= index.size()))
+            throw new IllegalArgumentException("Node rank out of range: " + rank);
+        return rank;
+    }
+
+    //every counted entry takes at least one byte, which bounds corrupted counts before allocating for them
+    private static int readCount(ByteBuffer data) {
+        int count = data.getInt();
+        if (count < 0 || count > data.remaining())
+            throw new IllegalArgumentException("Count out of range: " + count);
+        return count;
+    }
+
+    private static PDGNode getNode(PDGStatementOffsetIndex index, PDG pdg, int rank) {
+        if (rank == ENTRY_NODE)
+            return pdg.getEntryNode();
+        return index.getNode(rank);
+    }
+
+    private static CFGNode getInnerMostLoopNode(CFGNode cfgNode) {
+        if (cfgNode instanceof CFGBreakNode)
+            return ((CFGBreakNode) cfgNode).getInnerMostLoopNode();
+        if (cfgNode instanceof CFGContinueNode)
+            return ((CFGContinueNode) cfgNode).getInnerMostLoopNode();
+        return null;
+    }
+
+    private static void addVariables(Map<AbstractVariable, Integer> variables, Collection<AbstractVariable> newVariables) {
+        for (AbstractVariable variable : newVariables) {
+            if (!variables.containsKey(variable))
+                variables.put(variable, variables.size());
+        }
+    }
+
+    //a variable is written by the position of its declaration in the analyzed file, or by the class declaring it
+    private static boolean isLocatable(AbstractVariable variable, PsiFile psiFile) {
+        PsiVariable origin = variable.getOrigin();
+        if (!psiFile.equals(origin.getContainingFile())) {
+            if (!(origin instanceof PsiField))
+                return false;
+            PsiClass containingClass = ((PsiField) origin).getContainingClass();
+            if (containingClass == null || containingClass.getQualifiedName() == null)
+                return false;
+        }
+        if (variable instanceof CompositeVariable)
+            return isLocatable(((CompositeVariable) variable).getRightPart(), psiFile);
+        return true;
+    }
+
+    private static void writeVariable(DataOutputStream out, AbstractVariable variable, PsiFile psiFile) throws IOException {
+        PsiVariable origin = variable.getOrigin();
+        out.writeBoolean(variable instanceof CompositeVariable);
+        writeString(out, variable.getName());
+        writeString(out, variable.getType());
+        out.writeBoolean(variable.isField());
+        out.writeBoolean(variable.isParameter());
+        out.writeBoolean(variable.isStatic());
+        if (psiFile.equals(origin.getContainingFile())) {
+            out.writeByte(DECLARED_IN_FILE);
+            out.writeInt(origin.getTextOffset());
+        } else {
+            out.writeByte(DECLARED_IN_CLASS);
+            writeString(out, ((PsiField) origin).getContainingClass().getQualifiedName());
+        }
+        if (variable instanceof CompositeVariable)
+            writeVariable(out, ((CompositeVariable) variable).getRightPart(), psiFile);
+    }
+
+    private static AbstractVariable readVariable(ByteBuffer data, PsiFile psiFile) {
+        boolean composite = data.get() != 0;
+        String name = readString(data);
+        String type = readString(data);
+        boolean isField = data.get() != 0;
+        boolean isParameter = data.get() != 0;
+        boolean isStatic = data.get() != 0;
+        PsiVariable origin = null;
+        byte location = data.get();
+        if (location == DECLARED_IN_FILE) {
+            origin = PsiTreeUtil.getParentOfType(psiFile.findElementAt(data.getInt()), PsiVariable.class, false);
+        } else if (location == DECLARED_IN_CLASS) {
+            Project project = psiFile.getProject();
+            PsiClass containingClass = JavaPsiFacade.getInstance(project)
+                    .findClass(readString(data), GlobalSearchScope.allScope(project));
+            if (containingClass != null)
+                origin = containingClass.findFieldByName(name, false);
+        }
+        if (origin == null || !name.equals(origin.getName()))
+            return null;
+        PlainVariable variable = new PlainVariable(origin, name, type, isField, isParameter, isStatic);
+        if (!composite)
+            return variable;
+        AbstractVariable rightPart = readVariable(data, psiFile);
+        if (rightPart == null)
+            return null;
+        return new CompositeVariable(variable, rightPart);
+    }
+
+    private static void writeVariableSet(DataOutputStream out, Set<AbstractVariable> variableSet,
+                                         Map<AbstractVariable, Integer> variables) throws IOException {
+        BitSet bits = new BitSet(variables.size());
+        for (AbstractVariable variable : variableSet) {
+            bits.set(variables.get(variable));
+        }
+        long[] words = bits.toLongArray();
+        out.writeInt(words.length);
+        for (long word : words) {
+            out.writeLong(word);
+        }
+    }
+
+    private static Set<AbstractVariable> readVariableSet(ByteBuffer data, AbstractVariable[] variables) {
+        long[] words = new long[readCount(data)];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = data.getLong();
+        }
+        BitSet bits = BitSet.valueOf(words);
+        Set<AbstractVariable> variableSet = new LinkedHashSet<>();
+        for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+            variableSet.add(variables[i]);
+        }
+        return variableSet;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer data) {
+        byte[] bytes = new byte[readCount(data)];
+        data.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //a node that could not be laid over a rebuilt PDG, which makes the whole snapshot unusable
+    private static class UnknownNodeException extends RuntimeException {
+    }
+}
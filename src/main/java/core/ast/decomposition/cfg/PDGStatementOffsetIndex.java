@@ -0,0 +1,110 @@
+package core.ast.decomposition.cfg;
+
+import com.intellij.openapi.util.TextRange;
+
+import java.util.Arrays;
+
+//PDG nodes ordered by the start offset of their statements,
+//so that a text selection maps to a contiguous range of ranks
+class PDGStatementOffsetIndex {
+    private final PDGNode[] nodesByRank;
+    private final int[] startOffsets;
+    private final int[] endOffsets;
+    private final int[] rankById;
+
+    PDGStatementOffsetIndex(PDG pdg) {
+        int size = pdg.nodes.size();
+        PDGNode[] nodes = new PDGNode[size];
+        int[] nodeStartOffsets = new int[size];
+        int[] nodeEndOffsets = new int[size];
+        int maxId = 0;
+        int i = 0;
+        for (GraphNode node : pdg.nodes) {
+            PDGNode pdgNode = (PDGNode) node;
+            TextRange range = pdgNode.getStatement().getStatement().getTextRange();
+            nodes[i] = pdgNode;
+            nodeStartOffsets[i] = range.getStartOffset();
+            nodeEndOffsets[i] = range.getEndOffset();
+            maxId = Math.max(maxId, pdgNode.getId());
+            i++;
+        }
+        Integer[] order = new Integer[size];
+        for (int j = 0; j < size; j++) {
+            order[j] = j;
+        }
+        Arrays.sort(order, (a, b) -> {
+            if (nodeStartOffsets[a] != nodeStartOffsets[b])
+                return Integer.compare(nodeStartOffsets[a], nodeStartOffsets[b]);
+            return Integer.compare(nodes[a].getId(), nodes[b].getId());
+        });
+        this.nodesByRank = new PDGNode[size];
+        this.startOffsets = new int[size];
+        this.endOffsets = new int[size];
+        this.rankById = new int[maxId + 1];
+        Arrays.fill(rankById, -1);
+        for (int rank = 0; rank < size; rank++) {
+            int j = order[rank];
+            nodesByRank[rank] = nodes[j];
+            startOffsets[rank] = nodeStartOffsets[j];
+            endOffsets[rank] = nodeEndOffsets[j];
+            rankById[nodes[j].getId()] = rank;
+        }
+    }
+
+    int size() {
+        return nodesByRank.length;
+    }
+
+    PDGNode getNode(int rank) {
+        return nodesByRank[rank];
+    }
+
+    int getStartOffset(int rank) {
+        return startOffsets[rank];
+    }
+
+    int getEndOffset(int rank) {
+        return endOffsets[rank];
+    }
+
+    //returns -1 for nodes that are not statements of the indexed PDG (e.g. the method entry node)
+    int getRank(GraphNode node) {
+        if (node == null)
+            return -1;
+        int id = node.getId();
+        if (id < 0 || id >= rankById.length)
+            return -1;
+        int rank = rankById[id];
+        if (rank == -1 || !nodesByRank[rank].equals(node))
+            return -1;
+        return rank;
+    }
+
+    //first rank whose statement starts at or after the offset
+    int lowerBound(int offset) {
+        int low = 0;
+        int high = startOffsets.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (startOffsets[middle] < offset)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    //first rank whose statement starts after the offset
+    int upperBound(int offset) {
+        int low = 0;
+        int high = startOffsets.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (startOffsets[middle] <= offset)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+}
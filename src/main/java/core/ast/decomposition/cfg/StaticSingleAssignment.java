@@ -0,0 +1,434 @@
+package core.ast.decomposition.cfg;
+
+import com.intellij.psi.PsiVariable;
+
+import java.util.*;
+
+//Data dependences of the local variables and parameters of a method from their static single assignment form.
+//Phi functions are placed at the iterated dominance frontiers of the basic blocks defining a variable, and every use
+//is linked to the definitions reaching it through the phi functions, instead of searching the control flow from every definition.
+//A dependence that reaches its use over a loopback flow is carried by the loop of that flow, as in the control flow search
+class StaticSingleAssignment {
+    private final PDG pdg;
+    private final List<BasicBlock> blocks;
+    private final Map<BasicBlock, Integer> blockIndices;
+    //the predecessors of every block with the flows leading from them, unreachable blocks excluded
+    private final List<List<Integer>> predecessors;
+    private final List<List<CFGBranchNode>> predecessorLoops;
+    private final int[] reversePostorder;
+    private final int[] idoms;
+    private final List<Set<Integer>> dominanceFrontiers;
+    private final boolean valid;
+    private final Set<PsiVariable> localVariables;
+
+    //a definition of the variable by a node or the method entry, or a phi function merging the values of a block's predecessors
+    private static class Value {
+        private final PDGNode definingNode;
+        private final AbstractVariable variable;
+        private final List<Value> operands;
+        private final List<CFGBranchNode> operandLoops;
+        private Set<Value> definitions;
+
+        private Value(PDGNode definingNode, AbstractVariable variable) {
+            this.definingNode = definingNode;
+            this.variable = variable;
+            this.operands = null;
+            this.operandLoops = null;
+        }
+
+        private Value() {
+            this.definingNode = null;
+            this.variable = null;
+            this.operands = new ArrayList<>();
+            this.operandLoops = new ArrayList<>();
+        }
+
+        private boolean isPhi() {
+            return operands != null;
+        }
+    }
+
+    StaticSingleAssignment(PDG pdg, CFG cfg) {
+        this.pdg = pdg;
+        this.localVariables = pdg.getVariableDeclarationsInMethod();
+        this.blocks = cfg.getBasicBlocks();
+        this.blockIndices = new HashMap<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            blockIndices.put(blocks.get(i), i);
+        }
+        this.predecessors = new ArrayList<>();
+        this.predecessorLoops = new ArrayList<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            predecessors.add(new ArrayList<>());
+            predecessorLoops.add(new ArrayList<>());
+        }
+        this.valid = !blocks.isEmpty() && isStraightLine(cfg) && collectPredecessors();
+        this.reversePostorder = valid ? computeReversePostorder() : new int[0];
+        this.idoms = new int[blocks.size()];
+        this.dominanceFrontiers = new ArrayList<>();
+        if (valid) {
+            removeUnreachablePredecessors();
+            computeDominators();
+            computeDominanceFrontiers();
+        }
+    }
+
+    //the blocks are taken as they are only if control enters them at their leader and leaves them at their last node
+    private boolean isStraightLine(CFG cfg) {
+        for (GraphNode node : cfg.nodes) {
+            CFGNode cfgNode = (CFGNode) node;
+            if (cfgNode.getBasicBlock() == null || cfgNode.getPDGNode() == null)
+                return false;
+        }
+        for (BasicBlock block : blocks) {
+            List<CFGNode> blockNodes = block.getAllNodes();
+            for (int i = 0; i < blockNodes.size() - 1; i++) {
+                CFGNode node = blockNodes.get(i);
+                CFGNode nextNode = blockNodes.get(i + 1);
+                if (node.outgoingEdges.size() != 1 || node.outgoingEdges.iterator().next().dst != nextNode
+                        || nextNode.incomingEdges.size() != 1)
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean collectPredecessors() {
+        for (int i = 0; i < blocks.size(); i++) {
+            CFGNode lastNode = blocks.get(i).getLastNode();
+            //the loop of a loopback flow is kept by the following flows of the same node
+            CFGBranchNode loop = null;
+            for (GraphEdge edge : lastNode.outgoingEdges) {
+                Flow flow = (Flow) edge;
+                CFGNode dstNode = (CFGNode) flow.dst;
+                if (flow.isLoopbackFlow()) {
+                    if (dstNode instanceof CFGBranchLoopNode)
+                        loop = (CFGBranchLoopNode) dstNode;
+                    if (lastNode instanceof CFGBranchDoLoopNode)
+                        loop = (CFGBranchDoLoopNode) lastNode;
+                }
+                BasicBlock dstBlock = dstNode.getBasicBlock();
+                if (dstBlock.getLeader() != dstNode)
+                    return false;
+                int dstIndex = blockIndices.get(dstBlock);
+                predecessors.get(dstIndex).add(i);
+                predecessorLoops.get(dstIndex).add(loop);
+            }
+        }
+        return true;
+    }
+
+    private int[] computeReversePostorder() {
+        List<List<Integer>> successors = new ArrayList<>();
+        for (int i = 0; i < blocks.size(); i++) {
+            successors.add(new ArrayList<>());
+        }
+        for (int i = 0; i < blocks.size(); i++) {
+            for (int predecessor : predecessors.get(i)) {
+                successors.get(predecessor).add(i);
+            }
+        }
+        int[] postorder = new int[blocks.size()];
+        int numberOfReachableBlocks = 0;
+        boolean[] visited = new boolean[blocks.size()];
+        int[] stackBlocks = new int[blocks.size()];
+        int[] stackSuccessorIndices = new int[blocks.size()];
+        int top = 0;
+        stackBlocks[0] = 0;
+        visited[0] = true;
+        while (top >= 0) {
+            int block = stackBlocks[top];
+            List<Integer> blockSuccessors = successors.get(block);
+            if (stackSuccessorIndices[top] == blockSuccessors.size()) {
+                postorder[numberOfReachableBlocks++] = block;
+                top--;
+                continue;
+            }
+            int successor = blockSuccessors.get(stackSuccessorIndices[top]++);
+            if (!visited[successor]) {
+                visited[successor] = true;
+                top++;
+                stackBlocks[top] = successor;
+                stackSuccessorIndices[top] = 0;
+            }
+        }
+        int[] order = new int[numberOfReachableBlocks];
+        for (int i = 0; i < numberOfReachableBlocks; i++) {
+            order[i] = postorder[numberOfReachableBlocks - 1 - i];
+        }
+        return order;
+    }
+
+    private void removeUnreachablePredecessors() {
+        Arrays.fill(idoms, -1);
+        for (int block : reversePostorder) {
+            idoms[block] = block;
+        }
+        for (int i = 0; i < blocks.size(); i++) {
+            List<Integer> blockPredecessors = predecessors.get(i);
+            List<CFGBranchNode> blockPredecessorLoops = predecessorLoops.get(i);
+            for (int j = blockPredecessors.size() - 1; j >= 0; j--) {
+                if (idoms[blockPredecessors.get(j)] == -1) {
+                    blockPredecessors.remove(j);
+                    blockPredecessorLoops.remove(j);
+                }
+            }
+        }
+    }
+
+    //Cooper, Harvey and Kennedy's iterative algorithm over the reverse postorder
+    private void computeDominators() {
+        int[] order = new int[blocks.size()];
+        for (int i = 0; i < reversePostorder.length; i++) {
+            order[reversePostorder[i]] = i;
+        }
+        Arrays.fill(idoms, -1);
+        idoms[0] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 1; i < reversePostorder.length; i++) {
+                int block = reversePostorder[i];
+                int newIdom = -1;
+                for (int predecessor : predecessors.get(block)) {
+                    if (idoms[predecessor] == -1)
+                        continue;
+                    if (newIdom == -1) {
+                        newIdom = predecessor;
+                    } else {
+                        int finger1 = predecessor;
+                        int finger2 = newIdom;
+                        while (finger1 != finger2) {
+                            while (order[finger1] > order[finger2])
+                                finger1 = idoms[finger1];
+                            while (order[finger2] > order[finger1])
+                                finger2 = idoms[finger2];
+                        }
+                        newIdom = finger1;
+                    }
+                }
+                if (idoms[block] != newIdom) {
+                    idoms[block] = newIdom;
+                    changed = true;
+                }
+            }
+        }
+    }
+
+    private void computeDominanceFrontiers() {
+        for (int i = 0; i < blocks.size(); i++) {
+            dominanceFrontiers.add(new LinkedHashSet<>());
+        }
+        for (int block : reversePostorder) {
+            List<Integer> blockPredecessors = predecessors.get(block);
+            if (blockPredecessors.size() < 2 && block != 0)
+                continue;
+            for (int predecessor : blockPredecessors) {
+                int runner = predecessor;
+                while (runner != idoms[block]) {
+                    dominanceFrontiers.get(runner).add(block);
+                    if (runner == 0)
+                        break;
+                    runner = idoms[runner];
+                }
+            }
+        }
+    }
+
+    //creates the data dependences of the local variables and parameters of the method that are defined or used
+    //only in blocks reachable from its start, and returns them, so that the rest can be searched in the control flow
+    Set<AbstractVariable> createDataDependencies(AnalysisBudget budget) {
+        Set<AbstractVariable> variables = new LinkedHashSet<>();
+        Set<AbstractVariable> candidates = new LinkedHashSet<>(pdg.getEntryNode().definedVariables);
+        for (GraphNode node : pdg.nodes) {
+            PDGNode pdgNode = (PDGNode) node;
+            candidates.addAll(pdgNode.definedVariables);
+            candidates.addAll(pdgNode.usedVariables);
+        }
+        for (AbstractVariable variable : candidates) {
+            budget.checkTime();
+            if (createDataDependencies(variable))
+                variables.add(variable);
+            budget.check(pdg.edges.size());
+        }
+        return variables;
+    }
+
+    //returns false if the variable has to be searched in the control flow instead
+    boolean createDataDependencies(AbstractVariable variable) {
+        if (!valid || !(variable instanceof PlainVariable) || !localVariables.contains(variable.getOrigin()))
+            return false;
+        Set<Integer> definingBlocks = new LinkedHashSet<>();
+        boolean used = false;
+        for (int i = 0; i < blocks.size(); i++) {
+            for (CFGNode node : blocks.get(i).getAllNodes()) {
+                PDGNode pdgNode = node.getPDGNode();
+                boolean defines = pdgNode.definesLocalVariable(variable);
+                if (defines || pdgNode.usesLocalVariable(variable)) {
+                    //definitions and uses in dead code are left to the control flow search
+                    if (idoms[i] == -1)
+                        return false;
+                    used = true;
+                }
+                if (defines)
+                    definingBlocks.add(i);
+            }
+        }
+        if (!used)
+            return true;
+        Value[] phis = placePhis(definingBlocks);
+        Value initialValue = null;
+        PDGMethodEntryNode entryNode = pdg.getEntryNode();
+        for (AbstractVariable definedVariable : entryNode.definedVariables) {
+            if (definedVariable.equals(variable))
+                initialValue = new Value(entryNode, definedVariable);
+        }
+        Value[] exitValues = new Value[blocks.size()];
+        List<PDGNode> usingNodes = new ArrayList<>();
+        List<Value> usedValues = new ArrayList<>();
+        List<PDGNode> definingNodes = new ArrayList<>();
+        List<Value> redefinedValues = new ArrayList<>();
+        for (int block : reversePostorder) {
+            Value value;
+            if (phis[block] != null)
+                value = phis[block];
+            else if (block == 0)
+                value = initialValue;
+            else
+                value = exitValues[idoms[block]];
+            for (CFGNode node : blocks.get(block).getAllNodes()) {
+                PDGNode pdgNode = node.getPDGNode();
+                if (value != null && pdgNode.usesLocalVariable(variable)) {
+                    usingNodes.add(pdgNode);
+                    usedValues.add(value);
+                }
+                for (AbstractVariable definedVariable : pdgNode.definedVariables) {
+                    if (definedVariable.equals(variable)) {
+                        if (value != null) {
+                            definingNodes.add(pdgNode);
+                            redefinedValues.add(value);
+                        }
+                        value = new Value(pdgNode, definedVariable);
+                    }
+                }
+            }
+            exitValues[block] = value;
+        }
+        for (int block : reversePostorder) {
+            Value phi = phis[block];
+            if (phi == null)
+                continue;
+            if (block == 0) {
+                phi.operands.add(initialValue);
+                phi.operandLoops.add(null);
+            }
+            List<Integer> blockPredecessors = predecessors.get(block);
+            for (int i = 0; i < blockPredecessors.size(); i++) {
+                phi.operands.add(exitValues[blockPredecessors.get(i)]);
+                phi.operandLoops.add(predecessorLoops.get(block).get(i));
+            }
+        }
+        for (int i = 0; i < usingNodes.size(); i++) {
+            PDGNode usingNode = usingNodes.get(i);
+            for (Map.Entry<Value, Set<CFGBranchNode>> reachingDefinition : getReachingDefinitions(usedValues.get(i)).entrySet()) {
+                Value definition = reachingDefinition.getKey();
+                for (CFGBranchNode loop : reachingDefinition.getValue()) {
+                    pdg.edges.add(new PDGDataDependence(definition.definingNode, usingNode, definition.variable, loop));
+                }
+            }
+        }
+        //def-order dependences from the declarations to the definitions they reach
+        for (int i = 0; i < definingNodes.size(); i++) {
+            PDGNode definingNode = definingNodes.get(i);
+            for (Map.Entry<Value, Set<CFGBranchNode>> reachingDefinition : getReachingDefinitions(redefinedValues.get(i)).entrySet()) {
+                Value definition = reachingDefinition.getKey();
+                if (definition.definingNode.declaresLocalVariable(variable) && !definition.definingNode.equals(definingNode)) {
+                    for (CFGBranchNode loop : reachingDefinition.getValue()) {
+                        pdg.edges.add(new PDGDataDependence(definition.definingNode, definingNode, definition.variable, loop));
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    //the block 0 always gets a phi function, since the method entry is its additional predecessor
+    private Value[] placePhis(Set<Integer> definingBlocks) {
+        Value[] phis = new Value[blocks.size()];
+        if (!predecessors.get(0).isEmpty())
+            phis[0] = new Value();
+        Deque<Integer> worklist = new ArrayDeque<>(definingBlocks);
+        while (!worklist.isEmpty()) {
+            int block = worklist.poll();
+            for (int frontierBlock : dominanceFrontiers.get(block)) {
+                if (phis[frontierBlock] == null) {
+                    phis[frontierBlock] = new Value();
+                    if (!definingBlocks.contains(frontierBlock))
+                        worklist.add(frontierBlock);
+                }
+            }
+        }
+        return phis;
+    }
+
+    //the definitions merged into a value, each with the loops carrying it (null for a loop-independent dependence).
+    //Going backwards, the first operand taken over a loopback flow decides the loop, like the last one on a forward path
+    private Map<Value, Set<CFGBranchNode>> getReachingDefinitions(Value value) {
+        Map<Value, Set<CFGBranchNode>> reachingDefinitions = new LinkedHashMap<>();
+        if (!value.isPhi()) {
+            addReachingDefinition(reachingDefinitions, value, null);
+            return reachingDefinitions;
+        }
+        Set<Value> visitedPhis = new HashSet<>();
+        Deque<Value> stack = new ArrayDeque<>();
+        visitedPhis.add(value);
+        stack.push(value);
+        while (!stack.isEmpty()) {
+            Value phi = stack.pop();
+            for (int i = 0; i < phi.operands.size(); i++) {
+                Value operand = phi.operands.get(i);
+                CFGBranchNode loop = phi.operandLoops.get(i);
+                if (operand == null)
+                    continue;
+                if (!operand.isPhi()) {
+                    addReachingDefinition(reachingDefinitions, operand, loop);
+                } else if (loop != null) {
+                    for (Value definition : getDefinitionsOfPhi(operand)) {
+                        addReachingDefinition(reachingDefinitions, definition, loop);
+                    }
+                } else if (visitedPhis.add(operand)) {
+                    stack.push(operand);
+                }
+            }
+        }
+        return reachingDefinitions;
+    }
+
+    private static void addReachingDefinition(Map<Value, Set<CFGBranchNode>> reachingDefinitions, Value definition, CFGBranchNode loop) {
+        reachingDefinitions.computeIfAbsent(definition, key -> new LinkedHashSet<>()).add(loop);
+    }
+
+    //all definitions merged into a phi function regardless of loops, kept for the later uses reaching it
+    private Set<Value> getDefinitionsOfPhi(Value phi) {
+        if (phi.definitions != null)
+            return phi.definitions;
+        Set<Value> definitions = new LinkedHashSet<>();
+        Set<Value> visitedPhis = new HashSet<>();
+        Deque<Value> stack = new ArrayDeque<>();
+        visitedPhis.add(phi);
+        stack.push(phi);
+        while (!stack.isEmpty()) {
+            Value currentPhi = stack.pop();
+            for (Value operand : currentPhi.operands) {
+                if (operand == null)
+                    continue;
+                if (!operand.isPhi())
+                    definitions.add(operand);
+                else if (visitedPhis.add(operand))
+                    stack.push(operand);
+            }
+        }
+        phi.definitions = definitions;
+        return definitions;
+    }
+}
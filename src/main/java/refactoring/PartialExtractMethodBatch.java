@@ -0,0 +1,115 @@
+package refactoring;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.*;
+import com.intellij.refactoring.extractMethod.PrepareFailedException;
+import com.intellij.util.IncorrectOperationException;
+import core.ast.decomposition.cfg.ASTSlice;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.*;
+
+/**
+ * Applies several extractions, across methods and files, in a single undoable command without dialogs.
+ */
+public class PartialExtractMethodBatch {
+    private static final Logger LOG = Logger.getInstance(PartialExtractMethodBatch.class);
+
+    /**
+     * Selects the slices that can be applied together: slices of a changed method are dropped, and so is every
+     * slice sharing a statement with a slice of the same method that comes before it
+     *
+     * @param slices slices in order of preference
+     * @return applicable slices, in the same order
+     */
+    public static List<ASTSlice> getConflictFreeSlices(@NotNull List<ASTSlice> slices) {
+        List<ASTSlice> conflictFreeSlices = new ArrayList<>();
+        //the node ids of a method identify its statements, so overlapping slices share a set bit
+        Map<PsiMethod, BitSet> usedNodeIds = new HashMap<>();
+        for (ASTSlice slice : slices) {
+            if (!slice.isValid())
+                continue;
+            BitSet nodeIds = slice.getSliceNodeIds();
+            BitSet methodNodeIds = usedNodeIds.computeIfAbsent(slice.getSourceMethodDeclaration(), method -> new BitSet());
+            if (!methodNodeIds.intersects(nodeIds)) {
+                methodNodeIds.or(nodeIds);
+                conflictFreeSlices.add(slice);
+            }
+        }
+        return conflictFreeSlices;
+    }
+
+    /**
+     * Extracts the conflict-free slices in one command, grouped by file.
+     * The documents of the files are committed once, after all their extractions
+     *
+     * @param project project containing the slices
+     * @param editor  editor the extraction was started from
+     * @param slices  slices in order of preference
+     * @return number of applied extractions
+     */
+    public static int apply(@NotNull Project project, Editor editor, @NotNull List<ASTSlice> slices) {
+        Map<PsiFile, List<ASTSlice>> slicesByFile = new LinkedHashMap<>();
+        for (ASTSlice slice : getConflictFreeSlices(slices)) {
+            slicesByFile.computeIfAbsent(slice.getPsiFile(), file -> new ArrayList<>()).add(slice);
+        }
+        if (slicesByFile.isEmpty())
+            return 0;
+        int[] applied = {0};
+        WriteCommandAction.runWriteCommandAction(project, "Extract Methods", null, () -> {
+            PsiDocumentManager documentManager = PsiDocumentManager.getInstance(project);
+            Map<PsiClass, Set<String>> usedNames = new HashMap<>();
+            for (Map.Entry<PsiFile, List<ASTSlice>> fileSlices : slicesByFile.entrySet()) {
+                //the statements of all the slices of the file are resolved before any of them is moved
+                List<PartialExtractMethodProcessor> processors = new ArrayList<>();
+                //the editor is only passed to the processors of the file it shows
+                Document document = documentManager.getDocument(fileSlices.getKey());
+                Editor fileEditor = editor != null && editor.getDocument() == document ? editor : null;
+                for (ASTSlice slice : fileSlices.getValue()) {
+                    String methodName = getUniqueMethodName(slice, usedNames);
+                    processors.add(new PartialExtractMethodProcessor(project, fileEditor, slice, methodName));
+                }
+                for (int i = 0; i < processors.size(); i++) {
+                    PartialExtractMethodProcessor processor = processors.get(i);
+                    try {
+                        processor.setShowErrorDialogs(false);
+                        if (!processor.prepare())
+                            continue;
+                        processor.prepareWithoutDialog();
+                        processor.doRefactoring();
+                        applied[0]++;
+                    } catch (PrepareFailedException | IncorrectOperationException e) {
+                        LOG.info("Could not extract " + fileSlices.getValue().get(i), e);
+                    } catch (ProcessCanceledException e) {
+                        throw e;
+                    } catch (RuntimeException e) {
+                        //a failure of the platform processor on one slice does not stop the others
+                        LOG.warn("Could not extract " + fileSlices.getValue().get(i), e);
+                    }
+                }
+                if (document != null) {
+                    documentManager.doPostponedOperationsAndUnblockDocument(document);
+                    documentManager.commitDocument(document);
+                }
+            }
+        }, slicesByFile.keySet().toArray(new PsiFile[0]));
+        return applied[0];
+    }
+
+    static String getUniqueMethodName(ASTSlice slice, Map<PsiClass, Set<String>> usedNames) {
+        PsiClass targetClass = slice.getSourceTypeDeclaration();
+        String baseName = slice.getExtractedMethodName();
+        Set<String> names = usedNames.computeIfAbsent(targetClass, c -> new HashSet<>());
+        String name = baseName;
+        for (int i = 1; names.contains(name) || (targetClass != null && targetClass.findMethodsByName(name, false).length > 0); i++) {
+            name = baseName + i;
+        }
+        names.add(name);
+        return name;
+    }
+}
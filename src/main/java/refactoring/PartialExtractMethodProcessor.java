@@ -15,7 +15,6 @@ import com.intellij.refactoring.util.VariableData;
 import com.intellij.util.ArrayUtil;
 import com.intellij.util.ObjectUtils;
 import core.ast.decomposition.cfg.ASTSlice;
-import core.ast.decomposition.cfg.PDGNode;
 import org.jetbrains.annotations.NotNull;
 import utils.PsiUtils;
 
@@ -23,8 +22,11 @@ import java.util.*;
 
 public class PartialExtractMethodProcessor extends ExtractMethodProcessor {
     private PsiVariable myCriterion;
-    private ASTSlice mySlice;
+    //resolved once, before the extraction moves the statements
+    private Set<PsiStatement> myDuplicatedStatements;
+    private Set<PsiStatement> myRemovableStatements;
     private PsiElementFactory myElementFactory;
+    private final String myInitialName;
 
     /**
      * Constructs a processor for statement extraction to new method
@@ -35,9 +37,24 @@ public class PartialExtractMethodProcessor extends ExtractMethodProcessor {
      */
     public PartialExtractMethodProcessor(@NotNull Project project, Editor editor, ASTSlice slice)
     {
-        super(project, editor, getElements(slice.getSliceNodes()), slice.getLocalVariableCriterion().getType(),
-                "Partial Method Extraction", "", "refactoring.extractMethod");
-        mySlice = slice;
+        this(project, editor, slice, "");
+    }
+
+    /**
+     * Constructs a processor for statement extraction to new method
+     *
+     * @param project           project containing statements
+     * @param editor            editor showing statements
+     * @param slice             slice defining an extraction
+     * @param methodName        initial name of the new method
+     */
+    public PartialExtractMethodProcessor(@NotNull Project project, Editor editor, ASTSlice slice, String methodName)
+    {
+        super(project, editor, getElements(slice.getSliceStatements()), slice.getLocalVariableCriterion().getType(),
+                "Partial Method Extraction", methodName, "refactoring.extractMethod");
+        myInitialName = methodName;
+        myDuplicatedStatements = slice.getDuplicatedStatements();
+        myRemovableStatements = slice.getRemovableStatements();
         myReturnType = slice.getLocalVariableCriterion().getType();
         myThrownExceptions = new PsiClassType[0];
         myTargetClass = slice.getSourceTypeDeclaration();
@@ -46,18 +63,17 @@ public class PartialExtractMethodProcessor extends ExtractMethodProcessor {
         myOutputVariables[0] = myOutputVariable = myCriterion = slice.getLocalVariableCriterion();
     }
 
-    static private PsiElement[] getElements(Set<PDGNode> nodes) {
+    static private PsiElement[] getElements(Set<PsiStatement> statements) {
         ArrayList<PsiStatement> statementsToExtract = new ArrayList<>();
-        StringBuilder msg = new StringBuilder();
-        for (PDGNode pdgNode : nodes) {
+        for (PsiStatement statement : statements) {
             boolean isNotChild = true;
-            for (PDGNode node : nodes) {
-                if (PsiUtils.isChild(node.getASTStatement(), pdgNode.getASTStatement())) {
+            for (PsiStatement other : statements) {
+                if (PsiUtils.isChild(other, statement)) {
                     isNotChild = false;
                 }
             }
             if (isNotChild) {
-                statementsToExtract.add(pdgNode.getASTStatement());
+                statementsToExtract.add(statement);
             }
         }
         return statementsToExtract.toArray(new PsiElement[0]);
@@ -127,6 +143,16 @@ public class PartialExtractMethodProcessor extends ExtractMethodProcessor {
         return variables;
     }
 
+    /**
+     * Takes the parameters, name and visibility of the new method as they are, instead of asking for them in a dialog.
+     * Has to be called after {@link #prepare()}.
+     */
+    public void prepareWithoutDialog() {
+        setDataFromInputVariables();
+        myMethodName = myInitialName;
+        myMethodVisibility = PsiModifier.PRIVATE;
+    }
+
     /**
      * Creates new method in class and extracts statements into the method.
      */
@@ -153,22 +179,22 @@ public class PartialExtractMethodProcessor extends ExtractMethodProcessor {
         }
 
         for (PsiElement element : myElements) {
-            if (mySlice.getDuplicatedStatements().contains(element) ||
+            if (myDuplicatedStatements.contains(element) ||
                     element instanceof PsiCodeBlock ||
                     element instanceof PsiBlockStatement)
                 removeExtractedStatements(element);
-            else if (mySlice.getRemovableStatements().contains(element))
+            else if (myRemovableStatements.contains(element))
                 element.delete();
         }
     }
 
     private void removeExtractedStatements(PsiElement element) {
         for (PsiElement child : element.getChildren()) {
-            if (mySlice.getDuplicatedStatements().contains(child) ||
+            if (myDuplicatedStatements.contains(child) ||
                     child instanceof PsiCodeBlock ||
                     child instanceof PsiBlockStatement) {
                 removeExtractedStatements(child);
-            } else if (mySlice.getRemovableStatements().contains(child))
+            } else if (myRemovableStatements.contains(child))
                 child.delete();
         }
     }
@@ -244,10 +270,10 @@ public class PartialExtractMethodProcessor extends ExtractMethodProcessor {
                 continue;
             if (originalChild instanceof PsiStatement) {
                 PsiStatement statement = (PsiStatement) originalChild;
-                if (mySlice.getDuplicatedStatements().contains(statement) ||
+                if (myDuplicatedStatements.contains(statement) ||
                     statement instanceof PsiBlockStatement)
                     clearRemovableStatements(copiedChild,originalChild);
-                else if (!mySlice.getRemovableStatements().contains(statement))
+                else if (!myRemovableStatements.contains(statement))
                     copiedChild.delete();
             } else
                 clearRemovableStatements(copiedChild, originalChild);
@@ -0,0 +1,110 @@
+package refactoring;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.*;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.util.TypeConversionUtil;
+import com.intellij.refactoring.extractMethod.PrepareFailedException;
+import com.intellij.util.IncorrectOperationException;
+import core.ast.decomposition.cfg.ASTSlice;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Applies an extraction to a non-physical copy of its file, and checks the changed code for unresolved references
+ * and incompatible types. Has to be called in a read action.
+ */
+public class PartialExtractMethodValidator {
+    private static final Logger LOG = Logger.getInstance(PartialExtractMethodValidator.class);
+
+    /**
+     * @param project project containing the slice
+     * @param slice   slice to validate
+     * @return whether the extracted method and the method it was extracted from compile,
+     * or {@link ASTSlice.Validation#UNKNOWN} if the extraction could not be applied to the copy
+     */
+    public static ASTSlice.Validation validate(@NotNull Project project, @NotNull ASTSlice slice) {
+        PsiMethod method = slice.getSourceMethodDeclaration();
+        if (method == null || !slice.isValid())
+            return ASTSlice.Validation.UNKNOWN;
+        PsiFile fileCopy = (PsiFile) method.getContainingFile().copy();
+        PsiMethod methodCopy = PsiTreeUtil.findSameElementInCopy(method, fileCopy);
+        PartialExtractMethodProcessor processor =
+                new PartialExtractMethodProcessor(project, null, slice.copyTo(methodCopy), slice.getExtractedMethodName());
+        try {
+            processor.setShowErrorDialogs(false);
+            if (!processor.prepare())
+                return ASTSlice.Validation.UNKNOWN;
+            processor.prepareWithoutDialog();
+            processor.doRefactoring();
+        } catch (ProcessCanceledException e) {
+            throw e;
+        } catch (PrepareFailedException | IncorrectOperationException e) {
+            LOG.info("Could not apply " + slice + " to a copy", e);
+            return ASTSlice.Validation.UNKNOWN;
+        } catch (RuntimeException e) {
+            //a failure of the platform processor on the copy is not a compilation error of the code
+            LOG.warn("Could not validate " + slice, e);
+            return ASTSlice.Validation.UNKNOWN;
+        }
+        return hasErrors(methodCopy) || hasErrors(processor.getExtractedMethod()) ?
+                ASTSlice.Validation.DOES_NOT_COMPILE : ASTSlice.Validation.COMPILES;
+    }
+
+    private static boolean hasErrors(PsiElement element) {
+        if (element == null || !element.isValid())
+            return true;
+        AtomicBoolean hasErrors = new AtomicBoolean();
+        element.accept(new JavaRecursiveElementWalkingVisitor() {
+            @Override
+            public void visitReferenceElement(PsiJavaCodeReferenceElement reference) {
+                super.visitReferenceElement(reference);
+                if (reference.resolve() == null)
+                    setError();
+            }
+
+            @Override
+            public void visitReferenceExpression(PsiReferenceExpression expression) {
+                super.visitReferenceExpression(expression);
+                if (expression.resolve() == null)
+                    setError();
+            }
+
+            @Override
+            public void visitLocalVariable(PsiLocalVariable variable) {
+                super.visitLocalVariable(variable);
+                checkAssignable(variable.getType(), variable.getInitializer());
+            }
+
+            @Override
+            public void visitAssignmentExpression(PsiAssignmentExpression expression) {
+                super.visitAssignmentExpression(expression);
+                if (expression.getOperationTokenType() == JavaTokenType.EQ)
+                    checkAssignable(expression.getLExpression().getType(), expression.getRExpression());
+            }
+
+            @Override
+            public void visitReturnStatement(PsiReturnStatement statement) {
+                super.visitReturnStatement(statement);
+                PsiMethod method = PsiTreeUtil.getParentOfType(statement, PsiMethod.class, true, PsiLambdaExpression.class);
+                if (method != null && method.getReturnType() != null)
+                    checkAssignable(method.getReturnType(), statement.getReturnValue());
+            }
+
+            private void checkAssignable(PsiType type, PsiExpression expression) {
+                if (type != null && expression != null
+                        && !TypeConversionUtil.areTypesAssignmentCompatible(type, expression))
+                    setError();
+            }
+
+            private void setError() {
+                hasErrors.set(true);
+                stopWalking();
+            }
+        });
+        return hasErrors.get();
+    }
+}
@@ -14,13 +14,16 @@ import core.ast.decomposition.cfg.PDGNode;
 import org.jetbrains.annotations.NotNull;
 
 import javax.swing.*;
+import javax.swing.tree.TreePath;
 import javax.swing.tree.TreeSelectionModel;
 import java.awt.*;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
+import refactoring.PartialExtractMethodBatch;
 import refactoring.PartialExtractMethodProcessor;
 
 final class ExtractMethodPreviewWindow extends JPanel {
@@ -33,6 +36,7 @@ final class ExtractMethodPreviewWindow extends JPanel {
         this.editor = editor;
         setLayout(new BorderLayout());
         add(buildOpportunitiesPanel(slices), BorderLayout.WEST);
+        OpportunityValidationService.getInstance(project).validate(slices, tree::repaint);
         // add(buildPreviewPanel(slices.get(0)), BorderLayout.CENTER);
     }
 
@@ -43,14 +47,35 @@ final class ExtractMethodPreviewWindow extends JPanel {
         tree = new Tree();
         tree.setModel(new ExtractMethodModel(slices));
         tree.addMouseListener((DoubleClickListener) this::optionSelected);
-        tree.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
+        tree.getSelectionModel().setSelectionMode(TreeSelectionModel.DISCONTIGUOUS_TREE_SELECTION);
+
+        JButton extractSelectedButton = new JButton("Extract Selected");
+        extractSelectedButton.addActionListener(e -> extractSelected());
 
         panel.add(tree, BorderLayout.CENTER);
+        panel.add(extractSelectedButton, BorderLayout.SOUTH);
         return panel;
     }
 
+    private void extractSelected() {
+        TreePath[] paths = tree.getSelectionPaths();
+        if (paths == null)
+            return;
+        List<ASTSlice> slices = new ArrayList<>();
+        for (TreePath path : paths) {
+            if (path.getPath().length == 2 && path.getPathComponent(1) instanceof ASTSlice)
+                slices.add((ASTSlice) path.getPathComponent(1));
+        }
+        int applicable = PartialExtractMethodBatch.getConflictFreeSlices(slices).size();
+        int applied = PartialExtractMethodBatch.apply(project, editor, slices);
+        if (applied < slices.size()) {
+            Messages.showInfoMessage((slices.size() - applicable) + " of the selected opportunities overlap or are outdated, and "
+                    + (applicable - applied) + " could not be extracted", "Not All Opportunities Extracted");
+        }
+    }
+
     private void optionSelected() {
-        if (tree.getSelectionPath().getPath().length == 2) {
+        if (tree.getSelectionPath() != null && tree.getSelectionPath().getPath().length == 2) {
             Object choice = tree.getSelectionPath().getPathComponent(1);
             if (choice instanceof ASTSlice) {
                 extract((ASTSlice) choice);
@@ -71,6 +96,10 @@ final class ExtractMethodPreviewWindow extends JPanel {
 //        OutputStatements(slice.getSliceStatements(),"Slice");
 //        OutputStatements(slice.getDuplicatedStatements(), "Duplicated");
 //        OutputStatements(slice.getRemovableStatements(), "Removable");
+        if (!slice.isValid()) {
+            Messages.showInfoMessage("The method was changed since it was analyzed", "Outdated Opportunity");
+            return;
+        }
         PartialExtractMethodProcessor processor = new PartialExtractMethodProcessor(project, editor, slice);
 
         try {
@@ -0,0 +1,110 @@
+package ui;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.DocumentEvent;
+import com.intellij.openapi.editor.event.DocumentListener;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import core.ast.decomposition.cfg.ASTSlice;
+import org.jetbrains.annotations.NotNull;
+import refactoring.PartialExtractMethodValidator;
+import utils.AnalysisOptions;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Validates the top opportunities shown to the user in background, by a dry run of their extraction.
+ * The validation of a list of opportunities is cancelled by the next list and by any change of their files.
+ */
+public class OpportunityValidationService implements Disposable {
+    private static final int MAXIMUM_VALIDATED_OPPORTUNITIES = 10;
+    private final Project project;
+    private final ExecutorService executor;
+    private ProgressIndicator runningValidation;
+    private Set<Document> validatedDocuments = new HashSet<>();
+
+    public OpportunityValidationService(@NotNull Project project) {
+        this.project = project;
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        this.executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("Partial Method Extraction Validation", threads);
+        EditorFactory.getInstance().getEventMulticaster().addDocumentListener(new DocumentListener() {
+            @Override
+            public void documentChanged(@NotNull DocumentEvent event) {
+                cancelIfValidating(event.getDocument());
+            }
+        }, this);
+    }
+
+    static OpportunityValidationService getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, OpportunityValidationService.class);
+    }
+
+    /**
+     * @param slices     opportunities, best first
+     * @param onValidated called in the event dispatch thread whenever an opportunity was validated
+     */
+    synchronized void validate(@NotNull List<ASTSlice> slices, @NotNull Runnable onValidated) {
+        cancel();
+        if (!AnalysisOptions.isValidationEnabled())
+            return;
+        ProgressIndicator indicator = new EmptyProgressIndicator();
+        runningValidation = indicator;
+        validatedDocuments = new HashSet<>();
+        List<ASTSlice> validatedSlices = slices.subList(0, Math.min(slices.size(), MAXIMUM_VALIDATED_OPPORTUNITIES));
+        for (ASTSlice slice : validatedSlices) {
+            PsiFile file = slice.getPsiFile();
+            Document document = file != null ? PsiDocumentManager.getInstance(project).getDocument(file) : null;
+            if (document != null)
+                validatedDocuments.add(document);
+        }
+        for (ASTSlice slice : validatedSlices) {
+            executor.execute(() -> validate(slice, indicator, onValidated));
+        }
+    }
+
+    private void validate(ASTSlice slice, ProgressIndicator indicator, Runnable onValidated) {
+        ASTSlice.Validation[] validation = new ASTSlice.Validation[1];
+        //retried after every write action, unless it changed the file
+        while (!indicator.isCanceled()) {
+            if (ProgressIndicatorUtils.runInReadActionWithWriteActionPriority(
+                    () -> validation[0] = project.isDisposed() ?
+                            ASTSlice.Validation.UNKNOWN : PartialExtractMethodValidator.validate(project, slice),
+                    indicator)) {
+                slice.setValidation(validation[0]);
+                ApplicationManager.getApplication().invokeLater(onValidated, project.getDisposed());
+                return;
+            }
+            ProgressIndicatorUtils.yieldToPendingWriteActions();
+        }
+    }
+
+    private synchronized void cancelIfValidating(Document document) {
+        if (validatedDocuments.contains(document))
+            cancel();
+    }
+
+    private synchronized void cancel() {
+        if (runningValidation != null)
+            runningValidation.cancel();
+        runningValidation = null;
+        validatedDocuments = new HashSet<>();
+    }
+
+    @Override
+    public void dispose() {
+        //the executor runs on the shared application pool, and the queued validations end as soon as they start
+        cancel();
+    }
+}
@@ -1,7 +1,12 @@
 package ui;
 
 import com.intellij.openapi.actionSystem.*;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.wm.ToolWindow;
@@ -16,15 +21,18 @@ import core.ast.decomposition.cfg.ASTSlice;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
+import java.util.function.Supplier;
 
 public class PartialExtractMethodAction extends AnAction {
+    private static final int MAXIMUM_BEST_OPPORTUNITIES = 10;
+
     public PartialExtractMethodAction() { super("Partially extract"); }
 
     @Override
     public void actionPerformed(@NotNull final AnActionEvent event) {
         final Project project = event.getProject();
         final Editor editor = event.getData(CommonDataKeys.EDITOR);
-        if (project == null || editor == null || !editor.getSelectionModel().hasSelection()) {
+        if (project == null || editor == null) {
             Messages.showMessageDialog(project,"No Text Selected!", "Warning", Messages.getWarningIcon());
             return;
         }
@@ -33,6 +41,18 @@ public class PartialExtractMethodAction extends AnAction {
             Messages.showMessageDialog(project,"Can't get PSI view", "Warning", Messages.getWarningIcon());
             return;
         }
+        //without a selection, the best ranges of the method under the caret are searched for
+        if (!editor.getSelectionModel().hasSelection()) {
+            PsiMethod method = PsiTreeUtil.getParentOfType(psiFile.findElementAt(editor.getCaretModel().getOffset()), PsiMethod.class);
+            if (method == null) {
+                Messages.showMessageDialog(project, "Select statements or place the caret inside a method",
+                        "No Method at Caret", Messages.getWarningIcon());
+                return;
+            }
+            findOpportunities(project, editor,
+                    () -> method.isValid() ? PartialMethodExtractor.getBestOpportunities(method, MAXIMUM_BEST_OPPORTUNITIES) : null);
+            return;
+        }
 
 
         PsiElement firstStatement = psiFile.findElementAt(editor.getSelectionModel().getSelectionStart());
@@ -55,8 +75,25 @@ public class PartialExtractMethodAction extends AnAction {
         firstStatement = PsiTreeUtil.findFirstParent(firstStatement, p -> { return p.getParent() == codeBlock; });
         lastStatement = PsiTreeUtil.findFirstParent(lastStatement, p -> { return p.getParent() == codeBlock; });
 
-        List<ASTSlice> opportunities = PartialMethodExtractor.getOpportunities((PsiMethod) method, firstStatement, lastStatement);
-        ShowPreview(project, editor, opportunities);
+        final PsiElement first = firstStatement;
+        final PsiElement last = lastStatement;
+        findOpportunities(project, editor, () -> method.isValid() && first.isValid() && last.isValid() ?
+                PartialMethodExtractor.getOpportunities((PsiMethod) method, first, last) : null);
+    }
+
+    //the analysis may take up to the time budget, so it runs in background where it can be cancelled
+    private void findOpportunities(@NotNull Project project, @NotNull Editor editor,
+                                   @NotNull Supplier<List<ASTSlice>> analysis) {
+        ProgressManager.getInstance().run(new Task.Backgroundable(project, "Searching for extraction opportunities", true) {
+            @Override
+            public void run(@NotNull ProgressIndicator indicator) {
+                List<ASTSlice> opportunities = ReadAction.compute(analysis::get);
+                ApplicationManager.getApplication().invokeLater(() -> {
+                    if (!editor.isDisposed())
+                        ShowPreview(project, editor, opportunities);
+                }, project.getDisposed());
+            }
+        });
     }
 
     private void ShowPreview(@NotNull Project project, @NotNull Editor editor, List<ASTSlice> opportunities) {
@@ -0,0 +1,108 @@
+package ui;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.event.CaretEvent;
+import com.intellij.openapi.editor.event.CaretListener;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.startup.StartupActivity;
+import com.intellij.psi.*;
+import com.intellij.psi.util.PsiTreeUtil;
+import core.ast.PartialMethodExtractor;
+import org.jetbrains.annotations.NotNull;
+import utils.AnalysisOptions;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Analyzes the method under the caret in background once the caret rests in it,
+ * so that the "Partially extract" action only has to slice the selection.
+ * The analysis is cancelled by the next caret move and yields to write actions (i.e. typing).
+ */
+public class SpeculativeAnalysisService implements Disposable {
+    private final Project project;
+    private final ScheduledExecutorService executor;
+    private ScheduledFuture<?> scheduledAnalysis;
+    private ProgressIndicator runningAnalysis;
+
+    public SpeculativeAnalysisService(@NotNull Project project) {
+        this.project = project;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "Partial Method Extraction Speculative Analysis");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    private static SpeculativeAnalysisService getInstance(@NotNull Project project) {
+        return ServiceManager.getService(project, SpeculativeAnalysisService.class);
+    }
+
+    private void start() {
+        EditorFactory.getInstance().getEventMulticaster().addCaretListener(new CaretListener() {
+            @Override
+            public void caretPositionChanged(@NotNull CaretEvent event) {
+                Editor editor = event.getEditor();
+                if (project.equals(editor.getProject()))
+                    schedule(editor.getDocument(), editor.getCaretModel().getOffset());
+            }
+        }, this);
+    }
+
+    private synchronized void schedule(Document document, int offset) {
+        cancel();
+        scheduledAnalysis = executor.schedule(() -> analyze(document, offset),
+                AnalysisOptions.getSpeculativeAnalysisDelay(), TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void cancel() {
+        if (scheduledAnalysis != null)
+            scheduledAnalysis.cancel(false);
+        if (runningAnalysis != null)
+            runningAnalysis.cancel();
+    }
+
+    private void analyze(Document document, int offset) {
+        ProgressIndicator indicator = new EmptyProgressIndicator();
+        synchronized (this) {
+            runningAnalysis = indicator;
+        }
+        ProgressIndicatorUtils.runInReadActionWithWriteActionPriority(() -> {
+            if (project.isDisposed())
+                return;
+            PsiDocumentManager documentManager = PsiDocumentManager.getInstance(project);
+            if (!documentManager.isCommitted(document))
+                return;
+            PsiFile psiFile = documentManager.getPsiFile(document);
+            if (!(psiFile instanceof PsiJavaFile))
+                return;
+            PsiMethod method = PsiTreeUtil.getParentOfType(psiFile.findElementAt(offset), PsiMethod.class);
+            if (method != null && method.getBody() != null)
+                PartialMethodExtractor.precompute(method);
+        }, indicator);
+    }
+
+    @Override
+    public void dispose() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    public static class Starter implements StartupActivity {
+        @Override
+        public void runActivity(@NotNull Project project) {
+            if (AnalysisOptions.isSpeculativeAnalysisEnabled())
+                getInstance(project).start();
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package utils;
+
+import com.intellij.openapi.util.LowMemoryWatcher;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+//Least recently used cache of analysis results, weighed in estimated bytes. All caches share one budget: an entry that
+//does not fit evicts the eldest entries of its own cache, and every cache is halved when the IDE runs low on memory
+public class AnalysisCache<K, V> {
+    private static final Object lock = new Object();
+    private static final Set<AnalysisCache<?, ?>> caches = Collections.newSetFromMap(new WeakHashMap<>());
+    //the watcher is only weakly referenced by the platform
+    @SuppressWarnings("unused")
+    private static final LowMemoryWatcher lowMemoryWatcher = LowMemoryWatcher.register(AnalysisCache::shrinkAll);
+
+    private final String name;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, WeighedValue<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weight;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public AnalysisCache(String name, ToLongFunction<V> weigher) {
+        this.name = name;
+        this.weigher = weigher;
+        synchronized (lock) {
+            caches.add(this);
+        }
+    }
+
+    public V get(K key) {
+        synchronized (lock) {
+            WeighedValue<V> entry = entries.get(key);
+            if (entry == null) {
+                misses++;
+                return null;
+            }
+            hits++;
+            //results completed lazily, like the deferred data dependences, grow after they were put
+            setWeight(entry, weigher.applyAsLong(entry.value));
+            evict(this, AnalysisOptions.getCacheBudget());
+            return entry.value;
+        }
+    }
+
+    public void put(K key, V value) {
+        synchronized (lock) {
+            remove(key);
+            WeighedValue<V> entry = new WeighedValue<>(value);
+            entries.put(key, entry);
+            setWeight(entry, weigher.applyAsLong(value));
+            evict(this, AnalysisOptions.getCacheBudget());
+        }
+    }
+
+    //drops an outdated entry, which does not count as an eviction
+    public void remove(K key) {
+        synchronized (lock) {
+            WeighedValue<V> entry = entries.remove(key);
+            if (entry != null)
+                setWeight(entry, 0);
+        }
+    }
+
+    //drops every outdated entry, which does not count as an eviction either
+    public void removeIf(Predicate<V> outdated) {
+        synchronized (lock) {
+            Iterator<WeighedValue<V>> iterator = entries.values().iterator();
+            while (iterator.hasNext()) {
+                WeighedValue<V> entry = iterator.next();
+                if (outdated.test(entry.value)) {
+                    iterator.remove();
+                    setWeight(entry, 0);
+                }
+            }
+        }
+    }
+
+    private void setWeight(WeighedValue<V> entry, long entryWeight) {
+        weight += entryWeight - entry.weight;
+        entry.weight = entryWeight;
+    }
+
+    //evicts the eldest entries of the cache until all caches fit in the budget, keeping its most recent entry
+    private static void evict(AnalysisCache<?, ?> cache, long budget) {
+        while (getTotalWeight() > budget && cache.entries.size() > 1)
+            cache.evictEldest();
+    }
+
+    //summed up rather than kept, so that the caches of closed projects stop counting once they are collected
+    private static long getTotalWeight() {
+        long totalWeight = 0;
+        for (AnalysisCache<?, ?> cache : caches) {
+            totalWeight += cache.weight;
+        }
+        return totalWeight;
+    }
+
+    private void evictEldest() {
+        Iterator<WeighedValue<V>> iterator = entries.values().iterator();
+        WeighedValue<V> eldest = iterator.next();
+        iterator.remove();
+        setWeight(eldest, 0);
+        evictions++;
+    }
+
+    private static void shrinkAll() {
+        synchronized (lock) {
+            for (AnalysisCache<?, ?> cache : caches) {
+                long halfWeight = cache.weight / 2;
+                while (cache.weight > halfWeight && !cache.entries.isEmpty())
+                    cache.evictEldest();
+            }
+        }
+    }
+
+    //hits, misses, evictions and weight of every cache, merged by name
+    public static Map<String, long[]> getStatistics() {
+        Map<String, long[]> statistics = new TreeMap<>();
+        synchronized (lock) {
+            for (AnalysisCache<?, ?> cache : caches) {
+                long[] counters = statistics.computeIfAbsent(cache.name, name -> new long[4]);
+                counters[0] += cache.hits;
+                counters[1] += cache.misses;
+                counters[2] += cache.evictions;
+                counters[3] += cache.weight;
+            }
+        }
+        return statistics;
+    }
+
+    private static class WeighedValue<V> {
+        private final V value;
+        private long weight;
+
+        private WeighedValue(V value) {
+            this.value = value;
+        }
+    }
+}
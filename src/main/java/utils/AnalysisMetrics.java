@@ -0,0 +1,144 @@
+package utils;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+//Wall time and allocated bytes of every analysis phase of one getOpportunities call, together with the sizes of its graphs.
+//The measured call is bound to its thread, so that the phases deep inside the analysis can report without passing it around
+public class AnalysisMetrics {
+    private static final ThreadLocal<AnalysisMetrics> current = new ThreadLocal<>();
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private static final PhaseMeasurement NO_MEASUREMENT = () -> {
+    };
+
+    public enum Phase {
+        MODEL_BUILD,
+        CFG,
+        BASIC_BLOCK_CFG,
+        CONTROL_DEPENDENCES,
+        ALIAS_ANALYSIS,
+        DATA_DEPENDENCES,
+        SELECTION,
+        SLICING,
+        AST_SLICES
+    }
+
+    private final String method;
+    private final long[] wallTimes = new long[Phase.values().length];
+    private final long[] allocatedBytes = new long[Phase.values().length];
+    private final Map<String, Long> sizes = new LinkedHashMap<>();
+    private final long startTime;
+    private long totalWallTime;
+
+    private AnalysisMetrics(String method) {
+        this.method = method;
+        this.startTime = System.nanoTime();
+    }
+
+    public static AnalysisMetrics start(String method) {
+        AnalysisMetrics metrics = new AnalysisMetrics(method);
+        current.set(metrics);
+        return metrics;
+    }
+
+    public void finish() {
+        current.remove();
+        totalWallTime = System.nanoTime() - startTime;
+        AnalysisMetricsRegistry.record(this);
+    }
+
+    //the returned measurement has to be closed when the phase is over; nothing is measured outside of a started call
+    public static PhaseMeasurement measure(Phase phase) {
+        AnalysisMetrics metrics = current.get();
+        if (metrics == null)
+            return NO_MEASUREMENT;
+        long phaseStartTime = System.nanoTime();
+        long phaseStartBytes = getAllocatedBytes();
+        return () -> metrics.add(phase, System.nanoTime() - phaseStartTime, getAllocatedBytes() - phaseStartBytes);
+    }
+
+    public static AnalysisMetrics getCurrent() {
+        return current.get();
+    }
+
+    //binds the metrics of a call to a worker thread computing part of it, until the returned measurement is closed.
+    //The phases measured by several threads at once add up their wall times
+    public static PhaseMeasurement attach(AnalysisMetrics metrics) {
+        if (metrics == null)
+            return NO_MEASUREMENT;
+        AnalysisMetrics previous = current.get();
+        current.set(metrics);
+        return () -> {
+            if (previous == null)
+                current.remove();
+            else
+                current.set(previous);
+        };
+    }
+
+    private synchronized void add(Phase phase, long wallTime, long bytes) {
+        wallTimes[phase.ordinal()] += wallTime;
+        allocatedBytes[phase.ordinal()] += bytes;
+    }
+
+    public static void setSize(String name, long size) {
+        AnalysisMetrics metrics = current.get();
+        if (metrics != null)
+            metrics.sizes.put(name, size);
+    }
+
+    private static long getAllocatedBytes() {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+            if (allocationBean.isThreadAllocatedMemorySupported() && allocationBean.isThreadAllocatedMemoryEnabled())
+                return allocationBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public long getWallTime(Phase phase, TimeUnit unit) {
+        return unit.convert(wallTimes[phase.ordinal()], TimeUnit.NANOSECONDS);
+    }
+
+    public long getAllocatedBytes(Phase phase) {
+        return allocatedBytes[phase.ordinal()];
+    }
+
+    public long getTotalWallTime(TimeUnit unit) {
+        return unit.convert(totalWallTime, TimeUnit.NANOSECONDS);
+    }
+
+    public Map<String, Long> getSizes() {
+        return Collections.unmodifiableMap(sizes);
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(method).append(": ").append(getTotalWallTime(TimeUnit.MILLISECONDS)).append(" ms");
+        for (Phase phase : Phase.values()) {
+            if (wallTimes[phase.ordinal()] > 0) {
+                sb.append(", ").append(phase.name().toLowerCase()).append(' ')
+                        .append(getWallTime(phase, TimeUnit.MILLISECONDS)).append(" ms/")
+                        .append(allocatedBytes[phase.ordinal()] / 1024).append(" KB");
+            }
+        }
+        for (Map.Entry<String, Long> size : sizes.entrySet()) {
+            sb.append(", ").append(size.getKey()).append(' ').append(size.getValue());
+        }
+        return sb.toString();
+    }
+
+    @FunctionalInterface
+    public interface PhaseMeasurement extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
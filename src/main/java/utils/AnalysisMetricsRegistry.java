@@ -0,0 +1,94 @@
+package utils;
+
+import com.intellij.openapi.diagnostic.Logger;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+//Collects the metrics of finished analyses: the most recent and the slowest ones,
+//and a histogram of wall times per phase with power-of-two millisecond buckets
+public class AnalysisMetricsRegistry {
+    private static final Logger LOG = Logger.getInstance(AnalysisMetricsRegistry.class);
+    private static final int RECENT_SIZE = 100;
+    private static final int SLOWEST_SIZE = 10;
+    //the last bucket takes everything from 2^(BUCKETS - 2) ms on
+    private static final int BUCKETS = 16;
+    private static final Deque<AnalysisMetrics> recent = new ArrayDeque<>();
+    private static final List<AnalysisMetrics> slowest = new ArrayList<>();
+    private static final long[][] phaseHistograms = new long[AnalysisMetrics.Phase.values().length][BUCKETS];
+    private static final long[] totalHistogram = new long[BUCKETS];
+
+    static synchronized void record(AnalysisMetrics metrics) {
+        if (AnalysisOptions.isMetricsLogEnabled())
+            LOG.info(metrics.toString());
+        recent.addLast(metrics);
+        if (recent.size() > RECENT_SIZE)
+            recent.removeFirst();
+        slowest.add(metrics);
+        slowest.sort(Comparator.comparingLong((AnalysisMetrics m) -> m.getTotalWallTime(TimeUnit.NANOSECONDS)).reversed());
+        if (slowest.size() > SLOWEST_SIZE)
+            slowest.remove(SLOWEST_SIZE);
+        for (AnalysisMetrics.Phase phase : AnalysisMetrics.Phase.values()) {
+            //phases skipped thanks to a cached analysis are not counted
+            if (metrics.getWallTime(phase, TimeUnit.NANOSECONDS) > 0)
+                phaseHistograms[phase.ordinal()][getBucket(metrics.getWallTime(phase, TimeUnit.MILLISECONDS))]++;
+        }
+        totalHistogram[getBucket(metrics.getTotalWallTime(TimeUnit.MILLISECONDS))]++;
+    }
+
+    public static synchronized List<AnalysisMetrics> getRecentMetrics() {
+        return new ArrayList<>(recent);
+    }
+
+    public static synchronized List<AnalysisMetrics> getSlowestMetrics() {
+        return new ArrayList<>(slowest);
+    }
+
+    //bucket i > 0 counts the analyses whose phase took from 2^(i-1) to 2^i - 1 ms, bucket 0 those below 1 ms
+    public static synchronized long[] getHistogram(AnalysisMetrics.Phase phase) {
+        return phaseHistograms[phase.ordinal()].clone();
+    }
+
+    public static synchronized long[] getTotalHistogram() {
+        return totalHistogram.clone();
+    }
+
+    public static synchronized String getReport() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-20s", "ms"));
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            if (bucket == BUCKETS - 1)
+                sb.append(String.format("%8s", ">=" + (1L << (bucket - 1))));
+            else
+                sb.append(String.format("%8s", "<" + (1L << bucket)));
+        }
+        sb.append('\n');
+        for (AnalysisMetrics.Phase phase : AnalysisMetrics.Phase.values()) {
+            appendHistogram(sb, phase.name().toLowerCase(), phaseHistograms[phase.ordinal()]);
+        }
+        appendHistogram(sb, "total", totalHistogram);
+        for (Map.Entry<String, long[]> cache : AnalysisCache.getStatistics().entrySet()) {
+            long[] counters = cache.getValue();
+            sb.append(String.format("cache %s: %d hits, %d misses, %d evictions, %d KB%n",
+                    cache.getKey(), counters[0], counters[1], counters[2], counters[3] / 1024));
+        }
+        sb.append("slowest:\n");
+        for (AnalysisMetrics metrics : slowest) {
+            sb.append(metrics).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void appendHistogram(StringBuilder sb, String name, long[] histogram) {
+        sb.append(String.format("%-20s", name));
+        for (long count : histogram) {
+            sb.append(String.format("%8d", count));
+        }
+        sb.append('\n');
+    }
+
+    private static int getBucket(long milliseconds) {
+        int bucket = 64 - Long.numberOfLeadingZeros(milliseconds);
+        return Math.min(bucket, BUCKETS - 1);
+    }
+}
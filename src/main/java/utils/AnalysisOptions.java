@@ -0,0 +1,71 @@
+package utils;
+
+//Tunable analysis options, read from system properties (e.g. -Dextract.method.speculative.enabled=true)
+public class AnalysisOptions {
+
+    private static final String PREFIX = "extract.method.";
+
+    public static boolean isSpeculativeAnalysisEnabled() {
+        return Boolean.getBoolean(PREFIX + "speculative.enabled");
+    }
+
+    //how long the caret has to rest in a method before its analysis is started, in milliseconds
+    public static int getSpeculativeAnalysisDelay() {
+        return Integer.getInteger(PREFIX + "speculative.delay", 750);
+    }
+
+    public static boolean isDiskCacheEnabled() {
+        return Boolean.getBoolean(PREFIX + "disk.cache.enabled");
+    }
+
+    //logs the phase timings and graph sizes of every analysis
+    public static boolean isMetricsLogEnabled() {
+        return Boolean.getBoolean(PREFIX + "metrics.log");
+    }
+
+    //links the uses of local variables to their definitions through their SSA form,
+    //and defers the anti and output dependences until they are needed
+    public static boolean isSsaEnabled() {
+        return Boolean.getBoolean(PREFIX + "ssa.enabled");
+    }
+
+    //creates the data dependences of a variable only once slicing reaches a node using or defining it
+    public static boolean isDemandDrivenEnabled() {
+        return Boolean.getBoolean(PREFIX + "demand.enabled");
+    }
+
+    //slices the variables of a selection in parallel
+    public static boolean isParallelSlicingEnabled() {
+        return Boolean.getBoolean(PREFIX + "parallel.enabled");
+    }
+
+    //skips the variables assigned in the selection that are not read after it before being assigned again
+    public static boolean isLivenessPruningEnabled() {
+        return Boolean.parseBoolean(System.getProperty(PREFIX + "liveness.enabled", "true"));
+    }
+
+    //applies the top opportunities to copies of their files in background, and marks those that do not compile
+    public static boolean isValidationEnabled() {
+        return Boolean.getBoolean(PREFIX + "validation.enabled");
+    }
+
+    //estimated bytes shared by all in-memory analysis caches, in megabytes; by default a sixteenth of the heap
+    public static long getCacheBudget() {
+        long defaultBudget = Runtime.getRuntime().maxMemory() / 16 / 1024 / 1024;
+        return Long.getLong(PREFIX + "cache.budget", defaultBudget) * 1024 * 1024;
+    }
+
+    //methods with more statements get conservative data dependences right away
+    public static int getMaximumAnalyzedStatements() {
+        return Integer.getInteger(PREFIX + "budget.statements", 3000);
+    }
+
+    public static int getMaximumDependences() {
+        return Integer.getInteger(PREFIX + "budget.dependences", 500000);
+    }
+
+    //in milliseconds, for building the PDG and for slicing a selection
+    public static long getAnalysisTimeLimit() {
+        return Long.getLong(PREFIX + "budget.time", 10000);
+    }
+}
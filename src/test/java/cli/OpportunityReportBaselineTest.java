@@ -0,0 +1,70 @@
+package cli;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+public class OpportunityReportBaselineTest extends TestCase {
+    private File directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = Files.createTempDirectory("baseline").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtil.delete(directory);
+        super.tearDown();
+    }
+
+    public void testCsv() throws IOException {
+        // the file of a report line is compared in canonical form, whatever form it was written in
+        String file = directory.getPath() + "/src/../src/A.java";
+        String otherFile = directory.getPath() + "/src/B.java";
+        String firstLine = file + ",\"f(int, int)\",1a2b,xx,3,1,0.3333333333333333,1,10,false";
+        String secondLine = file + ",\"f(int, int)\",1a2b,yy,2,0,0.0,0,10,false";
+        String otherLine = otherFile + ",g(),3c4d,,,,,,,";
+        OpportunityReportBaseline baseline = read(true,
+                String.join(",", OpportunityReportStarter.COLUMNS), firstLine, secondLine, otherLine);
+
+        String canonicalFile = OpportunityReportStarter.getCanonicalPath(directory.getPath() + "/src/A.java");
+        assertEquals(Arrays.asList(firstLine, secondLine), baseline.getLines(canonicalFile, "f(int, int)", "1a2b"));
+        assertNull(baseline.getLines(canonicalFile, "f(int, int)", "5e6f"));
+        assertNull(baseline.getLines(canonicalFile, "h()", "1a2b"));
+        assertEquals(Collections.singletonList(otherLine),
+                baseline.getLinesOutside(Collections.singleton(canonicalFile)));
+    }
+
+    public void testJson() throws IOException {
+        String file = directory.getPath() + "/A.java";
+        String line = "{\"file\":\"" + file + "\",\"method\":\"f(\\\"quoted\\\")\",\"hash\":\"1a2b\",\"variable\":\"xx\","
+                + "\"extractedStatements\":3,\"duplicatedStatements\":1,\"duplicationRatio\":0.3333333333333333,"
+                + "\"parameters\":1,\"methodStatements\":10,\"approximate\":false}";
+        OpportunityReportBaseline baseline = read(false, line);
+
+        String canonicalFile = OpportunityReportStarter.getCanonicalPath(file);
+        assertEquals(Collections.singletonList(line), baseline.getLines(canonicalFile, "f(\"quoted\")", "1a2b"));
+        assertTrue(baseline.getLinesOutside(Collections.singleton(canonicalFile)).isEmpty());
+    }
+
+    public void testReportWithoutHashes() throws IOException {
+        try {
+            read(true, "file,method", directory.getPath() + "/A.java,f()");
+            fail("A report without hashes cannot be a baseline");
+        } catch (IOException expected) {
+        }
+    }
+
+    private OpportunityReportBaseline read(boolean csv, String... lines) throws IOException {
+        File report = new File(directory, csv ? "report.csv" : "report.ndjson");
+        Files.write(report.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return OpportunityReportBaseline.read(report, csv);
+    }
+}
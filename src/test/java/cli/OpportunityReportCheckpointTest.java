@@ -0,0 +1,99 @@
+package cli;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class OpportunityReportCheckpointTest extends TestCase {
+    private static final String[] FIRST_METHOD = {"A.java", "f()", "1a2b"};
+    private static final String[] SECOND_METHOD = {"B.java", "g()", "3c4d"};
+    private File directory;
+    private File report;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        directory = Files.createTempDirectory("checkpoint").toFile();
+        report = new File(directory, "report.csv");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        FileUtil.delete(directory);
+        super.tearDown();
+    }
+
+    // A line cut by the interruption is dropped from both the report and the log
+    public void testResumeAfterInterruption() throws IOException {
+        writeTwoMethods();
+        append(report, "x1,partial");
+        append(getLogFile(), "40\tC.java");
+
+        OpportunityReportCheckpoint checkpoint = new OpportunityReportCheckpoint(report);
+        assertTrue(checkpoint.isResumed());
+        assertTrue(checkpoint.isCompleted(FIRST_METHOD));
+        assertTrue(checkpoint.isCompleted(SECOND_METHOD));
+        checkpoint.close();
+        assertEquals("header\na1\na2\nb1\n", read(report));
+        assertEquals(3, read(getLogFile()).split("\n").length);
+    }
+
+    // Without a sync, the log may refer to lines the report lost; the method they belong to is analyzed again
+    public void testLogAheadOfReport() throws IOException {
+        writeTwoMethods();
+        try (RandomAccessFile file = new RandomAccessFile(report, "rw")) {
+            file.setLength("header\na1\na2\n".length());
+        }
+
+        OpportunityReportCheckpoint checkpoint = new OpportunityReportCheckpoint(report);
+        assertTrue(checkpoint.isResumed());
+        assertTrue(checkpoint.isCompleted(FIRST_METHOD));
+        assertFalse(checkpoint.isCompleted(SECOND_METHOD));
+        checkpoint.write(Collections.singletonList("b1"), SECOND_METHOD);
+        checkpoint.close();
+        assertEquals("header\na1\na2\nb1\n", read(report));
+    }
+
+    public void testStartOverAfterDelete() throws IOException {
+        writeTwoMethods();
+        OpportunityReportCheckpoint completed = new OpportunityReportCheckpoint(report);
+        completed.close();
+        completed.delete();
+        assertFalse(getLogFile().exists());
+
+        OpportunityReportCheckpoint checkpoint = new OpportunityReportCheckpoint(report);
+        assertFalse(checkpoint.isResumed());
+        assertFalse(checkpoint.isCompleted(FIRST_METHOD));
+        checkpoint.close();
+        assertEquals("", read(report));
+    }
+
+    private void writeTwoMethods() throws IOException {
+        OpportunityReportCheckpoint checkpoint = new OpportunityReportCheckpoint(report);
+        assertFalse(checkpoint.isResumed());
+        checkpoint.write(Collections.singletonList("header"), null);
+        checkpoint.write(Arrays.asList("a1", "a2"), FIRST_METHOD);
+        checkpoint.write(Collections.singletonList("b1"), SECOND_METHOD);
+        checkpoint.close();
+    }
+
+    private File getLogFile() {
+        return new File(report.getPath() + ".checkpoint");
+    }
+
+    private static void append(File file, String text) throws IOException {
+        Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
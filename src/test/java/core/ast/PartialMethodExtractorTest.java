@@ -10,7 +10,11 @@ import java.util.*;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import static utils.AnalysisOptionsOverride.withOption;
+
 public class PartialMethodExtractorTest extends LightPlatformCodeInsightFixtureTestCase {
+    private static final String[] FILES = {"src/testData/SimpleTest.java", "src/testData/NestedTest.java",
+            "src/testData/LoopTest.java"};
     PsiElementFactory elementFactory;
     PsiFile file;
     PsiElement firstStatement;
@@ -73,6 +77,123 @@ public class PartialMethodExtractorTest extends LightPlatformCodeInsightFixtureT
         assertEquals(yyBasedSlice.getRemovableStatements().size(),6);
     }
 
+    public void testCommentsWithin() {
+        PsiFile file = myFixture.configureByFile("src/testData/CommentTest.java");
+        List<PsiComment> psiComments = new ArrayList<>(PsiTreeUtil.findChildrenOfType(file, PsiComment.class));
+        // added backwards, so that every comment is inserted before the ones already sorted
+        Collections.reverse(psiComments);
+        List<CommentObject> sortedComments = new ArrayList<>();
+        for (PsiComment psiComment : psiComments) {
+            CommentObject comment = new CommentObject(psiComment.getText(),
+                    psiComment.getText().startsWith("//") ? CommentType.LINE : CommentType.BLOCK, 0, 0);
+            comment.setComment(psiComment);
+            CommentObject.addSorted(sortedComments, comment);
+        }
+        assertEquals(psiComments.size(), sortedComments.size());
+
+        // every range of the file, against the scan of all comments that members did before
+        for (int startPosition = 0; startPosition <= file.getTextLength(); startPosition++) {
+            for (int endPosition = startPosition; endPosition <= file.getTextLength(); endPosition++) {
+                List<CommentObject> expectedComments = new ArrayList<>();
+                for (CommentObject comment : sortedComments) {
+                    if (startPosition <= comment.getStartPosition()
+                            && endPosition >= comment.getStartPosition() + comment.getLength())
+                        expectedComments.add(comment);
+                }
+                assertEquals(expectedComments, CommentObject.getCommentsWithin(sortedComments, startPosition, endPosition));
+            }
+        }
+    }
+
+    // only the speculative analysis stores snapshots, and the analysis of the selection restores them
+    public void testSnapshotRoundTrip() {
+        for (String fileName : FILES) {
+            List<String> analyzed = describe(getRefactoringOpportunities(fileName, "disk.cache.enabled", "false"));
+            PsiMethod method = PsiTreeUtil.findChildOfType(file, PsiMethod.class);
+            assertNotNull(method);
+            assertNotNull(withOption("disk.cache.enabled", "true", () -> {
+                PartialMethodExtractor.precompute(method);
+                return PDGDiskCache.load(method);
+            }));
+            assertEquals(analyzed, describe(getRefactoringOpportunities(fileName, "disk.cache.enabled", "true")));
+        }
+    }
+
+    public void testApproximateOpportunities() {
+        List<ASTSlice> opportunities = getRefactoringOpportunities("src/testData/SimpleTest.java", "budget.statements", "1");
+        assertFalse(opportunities.isEmpty());
+        for (ASTSlice slice : opportunities) {
+            assertTrue(slice.isApproximate());
+        }
+    }
+
+    public void testSsaMatchesFlowSearch() {
+        assertSameOpportunities("ssa.enabled");
+    }
+
+    public void testDemandDrivenDependences() {
+        assertSameOpportunities("demand.enabled");
+    }
+
+    // joined in the order of the variables, whichever task finishes first
+    public void testParallelSlicing() {
+        assertSameOpportunities("parallel.enabled");
+        for (String fileName : FILES) {
+            assertEquals(getOrderedVariableNames(getRefactoringOpportunities(fileName, "parallel.enabled", "false")),
+                    getOrderedVariableNames(getRefactoringOpportunities(fileName, "parallel.enabled", "true")));
+        }
+    }
+
+    private static List<String> getOrderedVariableNames(List<ASTSlice> opportunities) {
+        return opportunities.stream().map(slice -> slice.getLocalVariableCriterion().getName()).collect(Collectors.toList());
+    }
+
+    public void testLivenessPruning() {
+        for (String fileName : FILES) {
+            List<String> unpruned = describe(getRefactoringOpportunities(fileName, "liveness.enabled", "false"));
+            List<String> pruned = describe(getRefactoringOpportunities(fileName, "liveness.enabled", "true"));
+            assertTrue(unpruned.containsAll(pruned));
+        }
+        // count is incremented in the loop but never read after it
+        assertTrue(getVariableNames(getRefactoringOpportunities("src/testData/LoopTest.java", "liveness.enabled", "false"))
+                .contains("count"));
+        assertEquals(new HashSet<>(Arrays.asList("sum", "product", "last")),
+                getVariableNames(getRefactoringOpportunities("src/testData/LoopTest.java", "liveness.enabled", "true")));
+    }
+
+    private static Set<String> getVariableNames(List<ASTSlice> opportunities) {
+        return opportunities.stream().map(slice -> slice.getLocalVariableCriterion().getName()).collect(Collectors.toSet());
+    }
+
+    // for options that change how the dependences are found, not which ones
+    private void assertSameOpportunities(String option) {
+        for (String fileName : FILES) {
+            assertEquals(describe(getRefactoringOpportunities(fileName, option, "false")),
+                    describe(getRefactoringOpportunities(fileName, option, "true")));
+        }
+    }
+
+    // sorted, so that the order in which the slices and their statements are found does not matter
+    private static List<String> describe(List<ASTSlice> opportunities) {
+        List<String> descriptions = new ArrayList<>();
+        for (ASTSlice slice : opportunities) {
+            descriptions.add(slice.getLocalVariableCriterion().getName()
+                    + " slice " + getSortedTexts(slice.getSliceStatements())
+                    + " removable " + getSortedTexts(slice.getRemovableStatements())
+                    + " parameters " + getSortedTexts(slice.getPassedParameters()));
+        }
+        Collections.sort(descriptions);
+        return descriptions;
+    }
+
+    private static List<String> getSortedTexts(Collection<? extends PsiElement> elements) {
+        return elements.stream().map(PsiElement::getText).sorted().collect(Collectors.toList());
+    }
+
+    private List<ASTSlice> getRefactoringOpportunities(String fileName, String option, String value) {
+        return withOption(option, value, () -> getRefactoringOpportunities(fileName));
+    }
+
     private Set<String> prepareStatements(String... statements) {
         return new HashSet<>(Arrays.asList(statements));
     }
@@ -0,0 +1,274 @@
+package core.ast.decomposition.cfg;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.*;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import core.ast.ASTReader;
+import core.ast.ClassObject;
+import core.ast.MethodObject;
+
+import java.util.*;
+
+import static utils.AnalysisOptionsOverride.withOption;
+
+public class PDGSelectionTest extends LightPlatformCodeInsightFixtureTestCase {
+    private static final String[] FILES = {"src/testData/SimpleTest.java", "src/testData/NestedTest.java",
+            "src/testData/LoopTest.java", "src/testData/ThrowTest.java"};
+
+    // filtering every node of the PDG by its offsets, as the selection did before the index, gives the expected members
+    public void testOffsetIndexMembership() {
+        for (String fileName : FILES) {
+            PDG pdg = getPDG(fileName);
+            pdg.resolveAllDataDependencies();
+            List<PsiStatement> statements = new ArrayList<>(
+                    PsiTreeUtil.findChildrenOfType(pdg.getMethod().getMethodDeclaration().getBody(), PsiStatement.class));
+            for (int first = 0; first < statements.size(); first++) {
+                for (int last = first; last < statements.size(); last++) {
+                    checkMembership(pdg, statements.get(first), statements.get(last));
+                }
+            }
+        }
+    }
+
+    private void checkMembership(PDG pdg, PsiElement first, PsiElement last) {
+        int startOffset = first.getTextRange().getStartOffset();
+        int endOffset = last.getTextRange().getEndOffset();
+        Set<GraphNode> expectedNodes = new HashSet<>();
+        for (GraphNode node : pdg.nodes) {
+            TextRange range = ((PDGNode) node).getStatement().getStatement().getTextRange();
+            if (range.getStartOffset() >= startOffset && range.getEndOffset() <= endOffset)
+                expectedNodes.add(node);
+        }
+        Set<GraphEdge> expectedEdges = new HashSet<>();
+        for (GraphEdge edge : pdg.edges) {
+            if (!expectedNodes.contains(edge.src) || !expectedNodes.contains(edge.dst))
+                continue;
+            if (edge instanceof PDGAbstractDataDependence && ((PDGAbstractDataDependence) edge).isLoopCarried()
+                    && !expectedNodes.contains(((PDGAbstractDataDependence) edge).getLoop().getPDGNode()))
+                continue;
+            expectedEdges.add(edge);
+        }
+
+        PDGSelection selection = new PDGSelection(pdg, first, last);
+        assertEquals(expectedNodes, new HashSet<>(selection.getNodes()));
+        assertEquals(expectedEdges, new HashSet<>(selection.getEdges()));
+    }
+
+    // loop-carried uses included, every use is linked through the SSA form to the definitions the flow search finds
+    public void testSsaDataDependencesMatchFlowSearch() {
+        for (String fileName : FILES) {
+            assertEquals(withOption("ssa.enabled", "false", () -> getDataDependences(getPDG(fileName))),
+                    withOption("ssa.enabled", "true", () -> getDataDependences(getPDG(fileName))));
+        }
+    }
+
+    public void testDemandDrivenDataDependences() {
+        for (String fileName : FILES) {
+            assertEquals(withOption("demand.enabled", "false", () -> getDataDependences(getPDG(fileName))),
+                    withOption("demand.enabled", "true", () -> getDataDependences(getPDG(fileName))));
+        }
+    }
+
+    // a budget too small for the precise analysis of any method, by statements or by dependences
+    public void testApproximateSlicesContainPreciseOnes() {
+        List<AnalysisBudget> budgets = Arrays.asList(new AnalysisBudget(1, Integer.MAX_VALUE, Long.MAX_VALUE),
+                new AnalysisBudget(Integer.MAX_VALUE, 0, Long.MAX_VALUE));
+        for (String fileName : FILES) {
+            for (AnalysisBudget budget : budgets) {
+                PDG precisePDG = getPDG(fileName, AnalysisBudget.UNLIMITED);
+                List<Set<Integer>> preciseSlices = getSliceNodeIds(precisePDG);
+                PDG approximatePDG = getPDG(fileName, budget);
+                List<Set<Integer>> approximateSlices = getSliceNodeIds(approximatePDG);
+                assertFalse(precisePDG.isApproximate());
+                assertTrue(approximatePDG.isApproximate());
+                assertEquals(preciseSlices.size(), approximateSlices.size());
+                for (int i = 0; i < preciseSlices.size(); i++) {
+                    assertTrue(approximateSlices.get(i).containsAll(preciseSlices.get(i)));
+                }
+            }
+        }
+    }
+
+    //the node ids of the slices of every range of statements and assigned variable, in a fixed order
+    private static List<Set<Integer>> getSliceNodeIds(PDG pdg) {
+        List<PsiStatement> statements = new ArrayList<>(
+                PsiTreeUtil.findChildrenOfType(pdg.getMethod().getMethodDeclaration().getBody(), PsiStatement.class));
+        List<Set<Integer>> slices = new ArrayList<>();
+        for (int first = 0; first < statements.size(); first++) {
+            for (int last = first; last < statements.size(); last++) {
+                PDGSelection selection = new PDGSelection(pdg, statements.get(first), statements.get(last));
+                for (PsiVariable variableDeclaration : pdg.getVariableDeclarationsInMethod()) {
+                    PlainVariable variable = new PlainVariable(variableDeclaration);
+                    if (!selection.isAssigned(variable))
+                        continue;
+                    Set<Integer> nodeIds = new HashSet<>();
+                    for (PDGNode node : new PDGSelectionSlice(selection, variable).sliceNodes) {
+                        nodeIds.add(node.getId());
+                    }
+                    slices.add(nodeIds);
+                }
+            }
+        }
+        return slices;
+    }
+
+    // the removable nodes and passed parameters are recomputed with plain sets over the nodes of every slice
+    public void testSliceNodeSets() {
+        for (String fileName : FILES) {
+            PDG pdg = getPDG(fileName);
+            List<PsiStatement> statements = new ArrayList<>(
+                    PsiTreeUtil.findChildrenOfType(pdg.getMethod().getMethodDeclaration().getBody(), PsiStatement.class));
+            for (int first = 0; first < statements.size(); first++) {
+                for (int last = first; last < statements.size(); last++) {
+                    PDGSelection selection = new PDGSelection(pdg, statements.get(first), statements.get(last));
+                    for (PsiVariable variableDeclaration : pdg.getVariableDeclarationsInMethod()) {
+                        PlainVariable variable = new PlainVariable(variableDeclaration);
+                        if (selection.isAssigned(variable))
+                            checkNodeSets(pdg, selection, new PDGSelectionSlice(selection, variable));
+                    }
+                }
+            }
+        }
+    }
+
+    private void checkNodeSets(PDG pdg, PDGSelection selection, PDGSelectionSlice slice) {
+        Set<GraphNode> remainingNodes = new HashSet<>();
+        remainingNodes.add(pdg.getEntryNode());
+        for (GraphNode node : pdg.nodes) {
+            if (!slice.sliceNodes.contains(node))
+                remainingNodes.add(node);
+        }
+        List<PDGNode> expectedRemovableNodes = new ArrayList<>();
+        for (GraphNode node : pdg.nodes) {
+            if (!remainingNodes.contains(node) && !slice.indispensableNodes.contains(node))
+                expectedRemovableNodes.add((PDGNode) node);
+        }
+        assertEquals(expectedRemovableNodes, new ArrayList<>(slice.removableNodes));
+
+        Set<AbstractVariable> expectedPassedParameters = new HashSet<>();
+        for (GraphEdge edge : pdg.edges) {
+            if (edge instanceof PDGDataDependence && remainingNodes.contains(edge.src)
+                    && slice.sliceNodes.contains(edge.dst))
+                expectedPassedParameters.add(((PDGDataDependence) edge).getData());
+        }
+        assertEquals(expectedPassedParameters, new HashSet<>(slice.getPassedParameters()));
+
+        // a throw statement nested in a statement that stays in the method is duplicated along with its slice
+        for (GraphNode node : selection.nodes) {
+            PDGNode throwNode = (PDGNode) node;
+            if (!(throwNode.getCFGNode() instanceof CFGThrowNode))
+                continue;
+            for (PDGNode parent = throwNode.getControlDependenceParent(); parent != null;
+                 parent = parent.getControlDependenceParent()) {
+                if (parent.getId() != 0 && remainingNodes.contains(parent))
+                    assertTrue(slice.indispensableNodes.containsAll(selection.computeSlice(throwNode)));
+            }
+        }
+    }
+
+    // at every step of the sweep, the moved selection is compared with one built from scratch over the same statements
+    public void testMovedSelectionMatchesNewOne() {
+        for (String fileName : FILES) {
+            PDG pdg = getPDG(fileName);
+            new PDGSelectionSweep(pdg).sweep(selection -> {
+                checkMovedSelection(pdg, selection);
+                return true;
+            });
+        }
+    }
+
+    private void checkMovedSelection(PDG pdg, PDGSelection movedSelection) {
+        PsiElement first = null;
+        PsiElement last = null;
+        for (GraphNode node : movedSelection.nodes) {
+            PsiElement statement = ((PDGNode) node).getStatement().getStatement();
+            if (first == null || statement.getTextRange().getStartOffset() < first.getTextRange().getStartOffset())
+                first = statement;
+            if (last == null || statement.getTextRange().getEndOffset() > last.getTextRange().getEndOffset())
+                last = statement;
+        }
+        assertNotNull(first);
+        PDGSelection newSelection = new PDGSelection(pdg, first, last);
+        assertEquals(new HashSet<>(newSelection.getNodes()), new HashSet<>(movedSelection.getNodes()));
+        assertEquals(new HashSet<>(newSelection.getEdges()), new HashSet<>(movedSelection.getEdges()));
+        // the memoised closures and liveness of the previous range must not leak into this one
+        for (PsiVariable variableDeclaration : pdg.getVariableDeclarationsInMethod()) {
+            PlainVariable variable = new PlainVariable(variableDeclaration);
+            if (!newSelection.isAssigned(variable))
+                continue;
+            assertEquals(newSelection.isLiveAfterSelection(variable), movedSelection.isLiveAfterSelection(variable));
+            PDGSelectionSlice newSlice = new PDGSelectionSlice(newSelection, variable);
+            PDGSelectionSlice movedSlice = new PDGSelectionSlice(movedSelection, variable);
+            assertEquals(newSlice.sliceNodes, movedSlice.sliceNodes);
+            assertEquals(newSlice.removableNodes, movedSlice.removableNodes);
+        }
+    }
+
+    public void testASTSliceStatements() {
+        for (String fileName : FILES) {
+            PDG pdg = getPDG(fileName);
+            List<ASTSlice> astSlices = new ArrayList<>();
+            new PDGSelectionSweep(pdg).sweep(selection -> {
+                for (PsiVariable variableDeclaration : pdg.getVariableDeclarationsInMethod()) {
+                    PlainVariable variable = new PlainVariable(variableDeclaration);
+                    if (!selection.isAssigned(variable))
+                        continue;
+                    PDGSelectionSlice slice = new PDGSelectionSlice(selection, variable);
+                    if (!slice.isValid())
+                        continue;
+                    ASTSlice astSlice = new ASTSlice(slice);
+                    assertEquals(getStatements(slice.sliceNodes), astSlice.getSliceStatements());
+                    assertEquals(getStatements(slice.removableNodes), astSlice.getRemovableStatements());
+                    astSlices.add(astSlice);
+                }
+                return true;
+            });
+            assertFalse(astSlices.isEmpty());
+
+            // once the method is edited, the offsets no longer lead to its statements
+            int bodyStartOffset = pdg.getMethod().getMethodDeclaration().getBody().getTextRange().getStartOffset();
+            WriteCommandAction.runWriteCommandAction(getProject(),
+                    () -> myFixture.getEditor().getDocument().insertString(bodyStartOffset + 1, "\n"));
+            PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+            for (ASTSlice astSlice : astSlices) {
+                assertFalse(astSlice.isValid());
+                assertTrue(astSlice.getSliceStatements().isEmpty());
+            }
+        }
+    }
+
+    private static Set<PsiStatement> getStatements(Set<PDGNode> nodes) {
+        Set<PsiStatement> statements = new HashSet<>();
+        for (PDGNode node : nodes) {
+            if (node.getASTStatement() != null)
+                statements.add(node.getASTStatement());
+        }
+        return statements;
+    }
+
+    private static Set<String> getDataDependences(PDG pdg) {
+        pdg.resolveAllDataDependencies();
+        Set<String> dependences = new HashSet<>();
+        for (GraphEdge edge : pdg.edges) {
+            if (edge instanceof PDGDataDependence)
+                dependences.add(edge.toString());
+        }
+        return dependences;
+    }
+
+    private PDG getPDG(String fileName) {
+        return getPDG(fileName, AnalysisBudget.UNLIMITED);
+    }
+
+    private PDG getPDG(String fileName, AnalysisBudget budget) {
+        PsiFile file = myFixture.configureByFile(fileName);
+        PsiClass psiClass = PsiTreeUtil.findChildOfType(file, PsiClass.class);
+        assertNotNull(psiClass);
+        new ASTReader(Collections.singletonList(psiClass));
+        ClassObject classObject = ASTReader.getSystemObject().getClassObject(psiClass.getQualifiedName());
+        MethodObject methodObject = classObject.getMethodList().get(0);
+        return new PDG(new CFG(methodObject), file, classObject.getFieldsAccessedInsideMethod(methodObject), null, budget);
+    }
+}
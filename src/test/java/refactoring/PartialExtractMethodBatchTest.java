@@ -0,0 +1,58 @@
+package refactoring;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiMethod;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import core.ast.decomposition.cfg.ASTSlice;
+import utils.SelectionOpportunities;
+
+import java.util.*;
+
+public class PartialExtractMethodBatchTest extends LightPlatformCodeInsightFixtureTestCase {
+    // the slice of zz contains every statement of the slice of yy, while the slice of dd shares none with either
+    public void testOverlappingSlices() {
+        Map<String, ASTSlice> sliceByVariable = getSliceByVariable();
+        assertEquals(Arrays.asList(sliceByVariable.get("zz"), sliceByVariable.get("dd")),
+                PartialExtractMethodBatch.getConflictFreeSlices(Arrays.asList(
+                        sliceByVariable.get("zz"), sliceByVariable.get("yy"), sliceByVariable.get("dd"))));
+        assertEquals(Arrays.asList(sliceByVariable.get("yy"), sliceByVariable.get("dd")),
+                PartialExtractMethodBatch.getConflictFreeSlices(Arrays.asList(
+                        sliceByVariable.get("yy"), sliceByVariable.get("zz"), sliceByVariable.get("dd"))));
+    }
+
+    public void testSlicesOfChangedMethod() {
+        List<ASTSlice> slices = new ArrayList<>(getSliceByVariable().values());
+        PsiMethod method = slices.get(0).getSourceMethodDeclaration();
+        assertNotNull(method.getBody());
+        int bodyStartOffset = method.getBody().getTextRange().getStartOffset();
+        WriteCommandAction.runWriteCommandAction(getProject(),
+                () -> myFixture.getEditor().getDocument().insertString(bodyStartOffset + 1, "\n"));
+        PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+        assertTrue(PartialExtractMethodBatch.getConflictFreeSlices(slices).isEmpty());
+    }
+
+    public void testUniqueMethodNames() {
+        Map<String, ASTSlice> sliceByVariable = getSliceByVariable();
+        ASTSlice yySlice = sliceByVariable.get("yy");
+        ASTSlice zzSlice = sliceByVariable.get("zz");
+        Map<PsiClass, Set<String>> usedNames = new HashMap<>();
+        zzSlice.setExtractedMethodName("yy");
+        assertEquals("yy", PartialExtractMethodBatch.getUniqueMethodName(yySlice, usedNames));
+        assertEquals("yy1", PartialExtractMethodBatch.getUniqueMethodName(zzSlice, usedNames));
+        // f is already a method of the class
+        ASTSlice ddSlice = sliceByVariable.get("dd");
+        ddSlice.setExtractedMethodName("f");
+        assertEquals("f1", PartialExtractMethodBatch.getUniqueMethodName(ddSlice, usedNames));
+    }
+
+    private Map<String, ASTSlice> getSliceByVariable() {
+        Map<String, ASTSlice> sliceByVariable = new HashMap<>();
+        for (ASTSlice slice : SelectionOpportunities.get(myFixture, "src/testData/SimpleTest.java")) {
+            sliceByVariable.put(slice.getLocalVariableCriterion().getName(), slice);
+        }
+        assertEquals(new HashSet<>(Arrays.asList("yy", "zz", "dd")), sliceByVariable.keySet());
+        return sliceByVariable;
+    }
+}
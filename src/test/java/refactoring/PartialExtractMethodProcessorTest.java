@@ -0,0 +1,48 @@
+package refactoring;
+
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.psi.*;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.refactoring.extractMethod.PrepareFailedException;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import core.ast.decomposition.cfg.ASTSlice;
+import utils.SelectionOpportunities;
+
+import java.util.*;
+
+public class PartialExtractMethodProcessorTest extends LightPlatformCodeInsightFixtureTestCase {
+    public void testParameters() throws PrepareFailedException {
+        // xx and yy are declared in the extracted statements, so only the parameters of f are passed
+        assertEquals(Arrays.asList("pp", "tt"), getParameterNames(extract("src/testData/SimpleTest.java", "zz")));
+        assertEquals(Collections.emptyList(), getParameterNames(extract("src/testData/SimpleTest.java", "dd")));
+    }
+
+    private PsiMethod extract(String fileName, String variableName) throws PrepareFailedException {
+        ASTSlice slice = null;
+        for (ASTSlice opportunity : SelectionOpportunities.get(myFixture, fileName)) {
+            if (opportunity.getLocalVariableCriterion().getName().equals(variableName))
+                slice = opportunity;
+        }
+        assertNotNull(slice);
+        PartialExtractMethodProcessor processor =
+                new PartialExtractMethodProcessor(getProject(), myFixture.getEditor(), slice, "extracted");
+        processor.setShowErrorDialogs(false);
+        assertTrue(processor.prepare());
+        processor.prepareWithoutDialog();
+        WriteCommandAction.runWriteCommandAction(getProject(), processor::doRefactoring);
+
+        PsiClass psiClass = PsiTreeUtil.findChildOfType(myFixture.getFile(), PsiClass.class);
+        assertNotNull(psiClass);
+        PsiMethod[] methods = psiClass.findMethodsByName("extracted", false);
+        assertEquals(1, methods.length);
+        return methods[0];
+    }
+
+    private static List<String> getParameterNames(PsiMethod method) {
+        List<String> names = new ArrayList<>();
+        for (PsiParameter parameter : method.getParameterList().getParameters()) {
+            names.add(parameter.getName());
+        }
+        return names;
+    }
+}
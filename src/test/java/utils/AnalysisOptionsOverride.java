@@ -0,0 +1,22 @@
+package utils;
+
+import java.util.function.Supplier;
+
+//Runs a computation with one analysis option set through its system property, restoring the property afterwards
+public class AnalysisOptionsOverride {
+    private static final String PREFIX = "extract.method.";
+
+    public static <T> T withOption(String option, String value, Supplier<T> computation) {
+        String property = PREFIX + option;
+        String previousValue = System.getProperty(property);
+        System.setProperty(property, value);
+        try {
+            return computation.get();
+        } finally {
+            if (previousValue != null)
+                System.setProperty(property, previousValue);
+            else
+                System.clearProperty(property);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package utils;
+
+import com.intellij.openapi.editor.SelectionModel;
+import com.intellij.psi.*;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.testFramework.fixtures.CodeInsightTestFixture;
+import core.ast.PartialMethodExtractor;
+import core.ast.decomposition.cfg.ASTSlice;
+
+import java.util.List;
+
+import static junit.framework.TestCase.assertNotNull;
+
+//Opens a test data file and finds the opportunities of its selection, the way the toolbar action does
+public class SelectionOpportunities {
+
+    public static List<ASTSlice> get(CodeInsightTestFixture fixture, String fileName) {
+        PsiFile file = fixture.configureByFile(fileName);
+        SelectionModel selectionModel = fixture.getEditor().getSelectionModel();
+        PsiElement firstStatement = file.findElementAt(selectionModel.getSelectionStart());
+        PsiElement lastStatement = file.findElementAt(selectionModel.getSelectionEnd());
+        assertNotNull(firstStatement);
+        assertNotNull(lastStatement);
+
+        PsiElement codeBlock = PsiTreeUtil.findFirstParent(
+                PsiTreeUtil.findCommonContext(firstStatement, lastStatement), p -> p instanceof PsiCodeBlock);
+        PsiElement method = PsiTreeUtil.findFirstParent(codeBlock, p -> p instanceof PsiMethod);
+        assertNotNull(method);
+        firstStatement = PsiTreeUtil.findFirstParent(firstStatement, p -> p.getParent() == codeBlock);
+        lastStatement = PsiTreeUtil.findFirstParent(lastStatement, p -> p.getParent() == codeBlock);
+        List<ASTSlice> opportunities = PartialMethodExtractor.getOpportunities((PsiMethod) method, firstStatement, lastStatement);
+        assertNotNull(opportunities);
+        return opportunities;
+    }
+}
@@ -0,0 +1,22 @@
+/* file header */
+public class CommentTest {
+    // field comment
+    private int count; /* trailing */
+
+    /**
+     * Javadoc of the method
+     */
+    int f(int pp) {
+        // first
+        int xx = pp; // after statement
+        Runnable runnable = new Runnable() {
+            /* inside the anonymous class */
+            public void run() {
+                // nested
+            }
+        };
+        /* block */ /* adjacent */
+        return xx + count; // last
+    }
+    // before the end
+}
@@ -0,0 +1,17 @@
+public class LoopTest {
+    int f(int[] values) {
+        <selection>
+        int sum = 0;
+        int product = 1;
+        int last = 0;
+        int count = 0;
+        for (int i = 0; i < values.length; i++) {
+            sum += values[i];
+            product *= last + 1;
+            last = values[i];
+            count++;
+        }
+        </selection>
+        return sum + product + last;
+    }
+}
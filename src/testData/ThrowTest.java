@@ -0,0 +1,18 @@
+public class ThrowTest {
+    int h(int pp) {
+        <selection>
+        int xx = 0;
+        int yy = 0;
+        if (pp < 0) {
+            throw new IllegalArgumentException();
+        }
+        while (xx < pp) {
+            xx += 2;
+            if (xx > 100)
+                throw new IllegalStateException();
+            yy += xx;
+        }
+        </selection>
+        return xx + yy;
+    }
+}